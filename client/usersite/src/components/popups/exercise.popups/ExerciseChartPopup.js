@@ -8,6 +8,9 @@ import BasePopup from '../BasePopup';
 import PushBtn from '../../push.btn/PushBtn';
 import { devLog } from '../../../utility/Logger';
 
+/** Size of each data window, also the page size fetched from the server */
+const PAGE_SIZE = 5;
+
 class ExerciseChartPopup extends BasePopup {
   constructor(props) {
     super(props);
@@ -15,6 +18,7 @@ class ExerciseChartPopup extends BasePopup {
       data:         [],
       offset:       0,
       hasNextPage:  true,
+      nextCursor:   null,
       isFetching:   false,
       selectedData: null
     };
@@ -29,25 +33,31 @@ class ExerciseChartPopup extends BasePopup {
   // =====================================================
   // Functions
   // =====================================================
-  fetchData = async (offset) => {
+  /**
+   * Fetches the page after the last loaded record. The server hands back a
+   * keyset cursor, so every page costs the same no matter how far back in 
+   * history we scroll.
+   * @note
+   * `/exerciseRecord/progression` serves the whole series in one request.
+   * Moving to it needs a `progression` call in ExerciseRecordController,
+   * which lives in `src/controllers` together with the other API calls.
+   */
+  fetchData = async () => {
     try {
+      const { nextCursor } = this.state;
       const response = await 
         ExerciseRecordCtrl.search(
-          offset,
-          { size: 5, exerciseNames: this.exerciseName, strict: true }
+          0,
+          { size: PAGE_SIZE, exerciseNames: this.exerciseName, strict: true, ...(nextCursor && { cursor: nextCursor }) }
         );
       const newData      = response.data;
       const combinedData = [...this.state.data, ...newData];
       const uniqueData   = Array.from( // Assuming 'id' is a unique identifier
         new Map(combinedData.map(item => [item.id, item])).values()
       );
-      const dataLimit    = 10; // Optionally, limit the size of data to the most recent N records
-      const limitedData  = uniqueData.slice(
-        Math.max(uniqueData.length - dataLimit, 0)
-      );
 
       this.setState( // This is async actually
-        { data: limitedData, hasNextPage: response.hasNextPage },
+        { data: uniqueData, hasNextPage: response.hasNextPage, nextCursor: response.nextCursor },
         () => {
           devLog("Currently Stored Data:\n", this.state.data);
           this.plotData();
@@ -64,15 +74,21 @@ class ExerciseChartPopup extends BasePopup {
 
   handlePageChange(direction) {
     if (this.state.isFetching) return;
-    if (!this.state.hasNextPage && direction > 0) return; // Ensure not to proceed if no next page
     const oldOffset = this.state.offset;
     const newOffset = oldOffset + direction < 0 ? 0 : oldOffset + direction;
+    /** Only hit the server when the window runs past what is already loaded */
+    const needsMore = direction > 0 && newOffset + PAGE_SIZE > this.state.data.length;
+    if (needsMore && !this.state.hasNextPage) return; // Ensure not to proceed if no next page
 
     this.setState(
       { offset: newOffset },
       async () => {
+        if (!needsMore) {
+          this.plotData();
+          return;
+        }
         this.setState({isFetching: true});
-        await this.fetchData(newOffset);
+        await this.fetchData();
         this.setState({isFetching: false});
     });
   }
@@ -86,7 +102,7 @@ class ExerciseChartPopup extends BasePopup {
   componentDidMountExtended() {
     super.componentDidMountExtended && super.componentDidMountExtended();
     document.addEventListener('keydown', this.handleKeyDown);
-    this.fetchData(0);
+    this.fetchData();
   }
 
   componentWillUnmountExtended() {
@@ -105,7 +121,7 @@ class ExerciseChartPopup extends BasePopup {
     d3.select(this.svgRef.current).selectAll('*').remove(); /** Remove all previous first */
     
     /** Size of each data window */
-    const pageSize = 5;
+    const pageSize = PAGE_SIZE;
     /** left index of window */
     const lIdx     = Math.max(this.state.offset, 0);
     /** Margins for the plot itself */
@@ -17,6 +17,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import com.thirteenseven.workoutdiary.dao.UserRepository;
 import com.thirteenseven.workoutdiary.filter.UserCookieFilter;
 import com.thirteenseven.workoutdiary.filter.CORSFilter;
+import com.thirteenseven.workoutdiary.filter.IdempotencyFilter;
+import com.thirteenseven.workoutdiary.filter.MongoRoundTripFilter;
 import com.thirteenseven.workoutdiary.utilities.JwtUtility;
 import com.thirteenseven.workoutdiary.advice.FilterChainAdvisor;
 
@@ -45,6 +47,12 @@ public class FilterConfig {
     @Autowired
     FilterChainAdvisor  filterChainAdvisor;
 
+    @Autowired
+    IdempotencyFilter   idempotencyFilter;
+
+    @Autowired
+    MongoRoundTripFilter mongoRoundTripFilter;
+
 
     // =====================================================
     // Registering
@@ -67,6 +75,17 @@ public class FilterConfig {
         return createRegistrationBean(userCookieFilter, 1, "/api/v1/*");
     }
 
+    @Bean
+    public FilterRegistrationBean<IdempotencyFilter> idempotencyRegistrationBean() {
+        /** Only the create endpoints; other writes are idempotent already or not retried */
+        return createRegistrationBean(idempotencyFilter, 2, "/api/v1/exerciseRecord/add", "/api/v1/exercise/add");
+    }
+
+    @Bean
+    public FilterRegistrationBean<MongoRoundTripFilter> mongoRoundTripRegistrationBean() {
+        return createRegistrationBean(mongoRoundTripFilter, 3, "/api/v1/*");
+    }
+
     // =====================================================
     // Utility
     // =====================================================
@@ -9,13 +9,17 @@
  * Interceptors will be executed before reaching the controller methods.
  */
 package com.thirteenseven.workoutdiary.config;
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.List;
 // ~~~~~~~~ SrpingBoot ~~~~~~~~
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.lang.NonNull;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 // ~~~~~~~~ thirteen ~~~~~~~~
+import com.thirteenseven.workoutdiary.controller.resolvers.CurrentUserArgumentResolver;
 import com.thirteenseven.workoutdiary.interceptor.NeedAdminInterceptor;
 import com.thirteenseven.workoutdiary.interceptor.CheckUserAuthorityInterceptor;
 
@@ -29,6 +33,8 @@ public class InterceptorConfig implements WebMvcConfigurer {
     private CheckUserAuthorityInterceptor checkUserAuthorityInterceptor;
     @Autowired
     private NeedAdminInterceptor          needAdminInterceptor;
+    @Autowired
+    private CurrentUserArgumentResolver   currentUserArgumentResolver;
 
     @Override
     public void addInterceptors(
@@ -48,5 +54,12 @@ public class InterceptorConfig implements WebMvcConfigurer {
                     "/api/v*/user/*softDeleteByIds"
                 );
         
-    }    
+    }
+
+    @Override
+    public void addArgumentResolvers(
+        @NonNull List<HandlerMethodArgumentResolver> resolvers
+    ) {
+        resolvers.add(currentUserArgumentResolver);
+    }
 }
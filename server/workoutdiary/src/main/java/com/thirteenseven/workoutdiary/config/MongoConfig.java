@@ -0,0 +1,25 @@
+package com.thirteenseven.workoutdiary.config;
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.service.MongoCommandStats;
+
+
+@Configuration
+public class MongoConfig {
+
+    // =====================================================
+    // Dependency Injections
+    // =====================================================
+    @Autowired
+    private MongoCommandStats mongoCommandStats;
+
+    /** Counts every command the client sends, see {@link MongoCommandStats}. */
+    @Bean
+    public MongoClientSettingsBuilderCustomizer commandCountingCustomizer() {
+        return builder -> builder.addCommandListener(mongoCommandStats);
+    }
+}
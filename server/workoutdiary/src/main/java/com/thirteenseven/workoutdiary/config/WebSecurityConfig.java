@@ -39,8 +39,10 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import com.thirteenseven.workoutdiary.advice.AuthEntryPointAdvisor;
 import com.thirteenseven.workoutdiary.filter.AuthEntryFilter;
 import com.thirteenseven.workoutdiary.filter.CORSFilter;
+import com.thirteenseven.workoutdiary.service.AuthTokenCacheService;
 import com.thirteenseven.workoutdiary.service.MUserDetailsService;
 import com.thirteenseven.workoutdiary.utilities.Constants;
+import com.thirteenseven.workoutdiary.utilities.JwtUtility;
 
 /**
  * @note
@@ -64,6 +66,10 @@ public class WebSecurityConfig {
 	private AuthEntryPointAdvisor   authEntryPoint;
     @Autowired
 	private AuthEntryFilter         authEntryFilter;
+    @Autowired
+	private AuthTokenCacheService   authTokenCache;
+    @Autowired
+	private JwtUtility              jwtUtils;
     
 
     // =====================================================
@@ -165,6 +171,15 @@ public class WebSecurityConfig {
             )
             .logout(logout-> 
                 logout.logoutUrl("/api/auth/logout")
+                /** Logged out tokens must not be served from the verified-token cache */
+                .addLogoutHandler((request, response, authentication) -> {
+                    authTokenCache.evict(jwtUtils.parseJwt(request));
+                    if (request.getCookies() != null) {
+                        Arrays.stream(request.getCookies())
+                            .filter(c -> c.getName().equals(Constants.Cookies.getToken()))
+                            .forEach(c -> authTokenCache.evict(c.getValue()));
+                    }
+                })
                 .logoutSuccessHandler((request, response, authentication) -> {
                     SecurityContextHolder.getContext().setAuthentication(null);
                     response.setStatus(HttpServletResponse.SC_OK);
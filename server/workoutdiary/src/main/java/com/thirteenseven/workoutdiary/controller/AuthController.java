@@ -29,10 +29,10 @@ import com.thirteenseven.workoutdiary.payload.request.SignupRequest;
 import com.thirteenseven.workoutdiary.payload.response.JwtResponse;
 import com.thirteenseven.workoutdiary.payload.response.SimpleResponse;
 import com.thirteenseven.workoutdiary.service.MUserDetails;
+import com.thirteenseven.workoutdiary.service.ReferenceCatalogService;
 import com.thirteenseven.workoutdiary.utilities.JwtUtility;
 import com.thirteenseven.workoutdiary.controller.handlers.ICookieHandler;
 import com.thirteenseven.workoutdiary.dao.UserRepository;
-import com.thirteenseven.workoutdiary.dao.UserRoleRepository;
 import com.thirteenseven.workoutdiary.exception.EntityNotFoundException;
 
 import jakarta.servlet.http.HttpServletResponse;
@@ -63,7 +63,7 @@ public class AuthController implements ICookieHandler {
 	UserRepository        userRepo;
 
 	@Autowired
-	UserRoleRepository    roleRepo;
+	ReferenceCatalogService referenceCatalog;
 
 	@Autowired
 	PasswordEncoder       encoder;
@@ -159,12 +159,12 @@ public class AuthController implements ICookieHandler {
 		Set<Role> roles = new HashSet<>();
 
 		if (strRoles == null || strRoles.size() == 0) {
-			Role userRole = roleRepo.findByName(Role.ERole.ROLE_USER)
+			Role userRole = referenceCatalog.findByName(Role.class, Role.ERole.ROLE_USER.name())
                             .orElseThrow(() -> new RuntimeException("[Error] ROLE_USER is not found."));
             roles.add(userRole);
             
 		} else {
-			roles = roleRepo.getRoles(strRoles);
+			roles = referenceCatalog.getRoles(strRoles);
 		}
 
 		user.setRoles(roles);
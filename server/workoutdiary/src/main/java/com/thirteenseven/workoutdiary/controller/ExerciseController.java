@@ -8,7 +8,6 @@ import java.util.stream.Collectors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.lang.NonNull;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.web.bind.annotation.CookieValue;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -19,12 +18,16 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 
 // ~~~~~~~~ Workout Diary ~~~~~~~~
 import com.thirteenseven.workoutdiary.controller.interfaces.INameController;
+import com.thirteenseven.workoutdiary.controller.resolvers.CurrentUser;
 import com.thirteenseven.workoutdiary.dao.DifficultyRepository;
 import com.thirteenseven.workoutdiary.dao.ExerciseRepository;
 import com.thirteenseven.workoutdiary.dao.ExerciseTypeRepository;
@@ -38,14 +41,23 @@ import com.thirteenseven.workoutdiary.model.Exercise;
 import com.thirteenseven.workoutdiary.model.ExerciseType;
 import com.thirteenseven.workoutdiary.model.MuscleGroup;
 import com.thirteenseven.workoutdiary.model.User;
+import com.thirteenseven.workoutdiary.model.base.MongoBaseModel;
+import com.thirteenseven.workoutdiary.model.base.NameBasedModel;
 import com.thirteenseven.workoutdiary.payload.request.ExercisePostRequest;
 import com.thirteenseven.workoutdiary.payload.response.DataResponse;
+import com.thirteenseven.workoutdiary.payload.response.NameSuggestion;
+import com.thirteenseven.workoutdiary.payload.response.PageDataResponse;
+import com.thirteenseven.workoutdiary.service.ExerciseFilterIndexService;
+import com.thirteenseven.workoutdiary.service.ExerciseNameIndexService;
 import com.thirteenseven.workoutdiary.service.ExerciseService;
+import com.thirteenseven.workoutdiary.service.ReferenceCatalogService;
 import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
-import com.thirteenseven.workoutdiary.utilities.JwtUtility;
+import com.thirteenseven.workoutdiary.service.base.BaseDocumentService.TotalCount;
 
 import jakarta.validation.Valid;
 
+import lombok.AllArgsConstructor;
+
 @RequestMapping("api/v1/exercise")
 @RestController
 public class ExerciseController implements INameController<Exercise>  {
@@ -60,11 +72,15 @@ public class ExerciseController implements INameController<Exercise>  {
     @Autowired
     private UserRepository          userRepository;
     @Autowired
-    private JwtUtility              jwtUtility;
-    @Autowired
     private DifficultyRepository    difficultyRepo;
     @Autowired
     private MuscleGroupRepository   muscleGroupRepo;
+    @Autowired
+    private ReferenceCatalogService referenceCatalog;
+    @Autowired
+    private ExerciseNameIndexService nameIndex;
+    @Autowired
+    private ExerciseFilterIndexService filterIndex;
 
 
 
@@ -83,10 +99,45 @@ public class ExerciseController implements INameController<Exercise>  {
         return exerciseService;
     }
 
+    @Override
+    public ReferenceCatalogService getReferenceCatalog() {
+        return referenceCatalog;
+    }
+
+    /** Keeps {@link #suggest} and the search filters in step with writes. */
+    @Override
+    public void onEntitiesWritten() {
+        INameController.super.onEntitiesWritten();
+        nameIndex.invalidate();
+        filterIndex.invalidate();
+    }
+
 
     // ==============================
     // REST
     // ==============================
+    /** Fields counted by {@code search?facets=true}, with the model they reference */
+    private static final Map<String, Class<? extends NameBasedModel>> FACETS = new LinkedHashMap<>();
+    static {
+        FACETS.put(ExerciseFilterIndexService.MUSCLE_GROUPS, MuscleGroup.class);
+        FACETS.put(ExerciseFilterIndexService.DIFFICULTY,    Difficulty.class);
+        FACETS.put(ExerciseFilterIndexService.EXERCISE_TYPE, ExerciseType.class);
+    }
+
+    /** How {@code substring} is matched by {@link #search}. */
+    public enum SearchMode {
+        /** 
+         * Case-insensitive substring of the name (and the description unless
+         * {@code strict}); matches partial words, but scans the collection.
+         */
+        REGEX,
+        /** 
+         * Whole words (stemmed) through the text index, best matches first; 
+         * name hits outweigh description hits.
+         */
+        TEXT
+    }
+
     @GetMapping("/search")
     public DataResponse<List<Exercise>> search(
         @RequestParam(required = false) String[] difficulties,
@@ -96,36 +147,86 @@ public class ExerciseController implements INameController<Exercise>  {
         @RequestParam(required = false) String   authorNames,
         @RequestParam(required = false, defaultValue = "false") boolean strict,
         @RequestParam(required = false, defaultValue = "0") int page, // Default page index is 0
-        @RequestParam(required = false, defaultValue = "5") int size // Default page size is 5
+        @RequestParam(required = false, defaultValue = "5") int size, // Default page size is 5
+        @RequestParam(required = false, defaultValue = "NONE") TotalCount total,
+        @RequestParam(required = false, defaultValue = "REGEX") SearchMode mode,
+        @RequestParam(required = false, defaultValue = "false") boolean facets
     ) throws EntityNotFoundException {
-        Query query = new Query();
-
-        if (difficulties != null) {
-            List<Difficulty> difficultyObjs = findByNameInSpecificRepo(difficultyRepo, difficulties);
-            
-            if (!difficultyObjs.isEmpty()) {
-                if (strict) query.addCriteria(Criteria.where("difficulty").all(difficultyObjs));
-                else        query.addCriteria(Criteria.where("difficulty").in(difficultyObjs));
+        SearchFilters filters = resolveFilters(difficulties, muscleGroups, exerciseTypes, authorNames);
+
+        /** Reference filters only: answered by the bitmap index, Mongo just loads the page */
+        if (substring == null) {
+            ExerciseFilterIndexService.Match match   = filterIndex.match(referenceFilters(filters), strict);
+            List<String>                     pageIds = match.idsOfPage(page, size);
+            boolean                          hasNext = pageIds.size() > size;
+            if (hasNext) pageIds = pageIds.subList(0, size);
+
+            Map<String, Exercise> byId = new HashMap<>();
+            getDocumentService().findAllByFieldIn(Exercise.class, "id", pageIds)
+                .forEach(exercise -> byId.put(exercise.getId(), exercise));
+            List<Exercise> content = pageIds.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+
+            Map<String, Map<String, Long>> facetCounts = null;
+            if (facets) {
+                facetCounts = new LinkedHashMap<>();
+                for (String field : FACETS.keySet()) facetCounts.put(field, match.countBy(field));
             }
-        }
 
-        if (muscleGroups != null && muscleGroups.length > 0) {
-            List<MuscleGroup> muscleGroupObjects = findByNameInSpecificRepo(muscleGroupRepo, muscleGroups);
-            if (!muscleGroupObjects.isEmpty()) {
-                if (strict) query.addCriteria(Criteria.where("muscleGroups").all(muscleGroupObjects));
-                else        query.addCriteria(Criteria.where("muscleGroups").in(muscleGroupObjects));
-            }
-        }
-        
-        if (exerciseTypes != null && exerciseTypes.length > 0) {
-            List<ExerciseType> exerciseTypeObjs = findByNameInSpecificRepo(exerciseTypeRepository, exerciseTypes);
-            if (!exerciseTypeObjs.isEmpty()) {
-                if (strict) query.addCriteria(Criteria.where("exerciseType").all(exerciseTypeObjs));
-                else        query.addCriteria(Criteria.where("exerciseType").in(exerciseTypeObjs));
-            }
+            return new PageDataResponse<>(
+                content, "Success!", hasNext, null, total == TotalCount.NONE ? null : match.count(), namedFacets(facetCounts)
+            );
         }
 
-        if (substring != null) {
+        Query query = substringQuery(substring, mode, filters, strict);
+        getDocumentService().softDeletedField(Exercise.class).ifPresent(field -> query.addCriteria(Criteria.where(field).ne(true)));
+
+        Long            totalCount = getDocumentService().countMatching(query, Exercise.class, total);
+        Pageable        pageable   = PageRequest.of(page, size);
+        Slice<Exercise> resultPage = getDocumentService().findSlice(query, Exercise.class, pageable);
+        logger.debug("Number (Idx) : " + resultPage.getNumber());
+        logger.debug("Has Next     : " + resultPage.hasNext());
+
+
+        Map<String, Map<String, Long>> facetCounts = facets ? exerciseService.countFacets(query, FACETS.keySet()) : null;
+
+        return new PageDataResponse<>(resultPage.getContent(), "Success!", resultPage.hasNext(), null, totalCount, namedFacets(facetCounts));
+    }
+
+    /**
+     * Replaces the referenced ids of the facet counts by names, most 
+     * frequent first; ids no longer in the catalog are kept as they are.
+     */
+    private Map<String, Map<String, Long>> namedFacets(Map<String, Map<String, Long>> countsById) {
+        if (countsById == null) return null;
+        Map<String, Map<String, Long>> named = new LinkedHashMap<>();
+        countsById.forEach((field, counts) -> {
+            Map<String, ? extends NameBasedModel> catalog = referenceCatalog.byId(FACETS.get(field));
+            Map<String, Long>                     byName  = new LinkedHashMap<>();
+            counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> {
+                    NameBasedModel value = catalog.get(entry.getKey());
+                    byName.merge(value == null ? entry.getKey() : value.getName(), entry.getValue(), Long::sum);
+                });
+            named.put(field, byName);
+        });
+        return named;
+    }
+
+    /** The Mongo query of a {@code substring} {@link #search}, matched as {@code mode} says. */
+    private static Query substringQuery(String substring, SearchMode mode, SearchFilters filters, boolean strict) {
+        boolean textSearch = mode == SearchMode.TEXT && !substring.isBlank();
+        Query   query      = textSearch
+            ? TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(substring)).sortByScore()
+            : new Query();
+
+        addReferenceCriteria(query, filters, strict);
+
+        if (!textSearch) {
+            query.with(ExerciseFilterIndexService.ORDER); // same pages as the bitmap index
             if (strict) {
                 query.addCriteria(Criteria.where("name").regex(substring, "i")); // Case-insensitive substring search
             } else {
@@ -134,27 +235,93 @@ public class ExerciseController implements INameController<Exercise>  {
                 query.addCriteria(new Criteria().orOperator(nameCriteria, descriptionCriteria));
             }
         }
+        return query;
+    }
 
-        if (authorNames != null) {
-            List<User> userObjs = findByNameInSpecificRepo(userRepository, new String[] {authorNames});
-            if (!userObjs.isEmpty()) {
-                if (strict) query.addCriteria(Criteria.where("author").all(userObjs));
-                else        query.addCriteria(Criteria.where("author").in(userObjs));
-            }
+    /** Reference filters of a search, resolved from their names. */
+    @AllArgsConstructor
+    private static final class SearchFilters {
+        final List<Difficulty>   difficulties;
+        final List<MuscleGroup>  muscleGroups;
+        final List<ExerciseType> exerciseTypes;
+        final List<User>         authors;
+    }
+
+    /**
+     * Resolves the names sent to {@link #search}; a filter which is not sent
+     * reads as an empty list.
+     * 
+     * @throws EntityNotFoundException listing every name which cannot be found
+     */
+    private SearchFilters resolveFilters(
+        String[] difficulties,
+        String[] muscleGroups,
+        String[] exerciseTypes,
+        String   authorNames
+    ) throws EntityNotFoundException {
+        List<Difficulty>   difficultyObjs   = difficulties == null
+            ? List.of() : findByNameInSpecificRepo(difficultyRepo, difficulties);
+        List<MuscleGroup>  muscleGroupObjs  = muscleGroups == null || muscleGroups.length == 0
+            ? List.of() : findByNameInSpecificRepo(muscleGroupRepo, muscleGroups);
+        List<ExerciseType> exerciseTypeObjs = exerciseTypes == null || exerciseTypes.length == 0
+            ? List.of() : findByNameInSpecificRepo(exerciseTypeRepository, exerciseTypes);
+        List<User>         userObjs         = authorNames == null
+            ? List.of() : findByNameInSpecificRepo(userRepository, new String[] {authorNames});
+        return new SearchFilters(difficultyObjs, muscleGroupObjs, exerciseTypeObjs, userObjs);
+    }
+
+    /** Referenced ids of the search filters, by the field they filter. */
+    private static Map<String, List<String>> referenceFilters(SearchFilters filters) {
+        Map<String, List<String>> ids = new HashMap<>();
+        ids.put(ExerciseFilterIndexService.DIFFICULTY,    idsOf(filters.difficulties));
+        ids.put(ExerciseFilterIndexService.MUSCLE_GROUPS, idsOf(filters.muscleGroups));
+        ids.put(ExerciseFilterIndexService.EXERCISE_TYPE, idsOf(filters.exerciseTypes));
+        ids.put(ExerciseFilterIndexService.AUTHOR,        idsOf(filters.authors));
+        return ids;
+    }
+
+    /** The same filters as Mongo criteria: {@code $all} when {@code strict}, {@code $in} otherwise. */
+    private static void addReferenceCriteria(Query query, SearchFilters filters, boolean strict) {
+        if (!filters.difficulties.isEmpty()) {
+            if (strict) query.addCriteria(Criteria.where("difficulty").all(filters.difficulties));
+            else        query.addCriteria(Criteria.where("difficulty").in(filters.difficulties));
         }
 
-        Pageable pageable = PageRequest.of(page, size);        
-        List<Exercise> exercises = getDocumentService().queryOnClass(query.with(pageable), Exercise.class);
+        if (!filters.muscleGroups.isEmpty()) {
+            if (strict) query.addCriteria(Criteria.where("muscleGroups").all(filters.muscleGroups));
+            else        query.addCriteria(Criteria.where("muscleGroups").in(filters.muscleGroups));
+        }
+        
+        if (!filters.exerciseTypes.isEmpty()) {
+            if (strict) query.addCriteria(Criteria.where("exerciseType").all(filters.exerciseTypes));
+            else        query.addCriteria(Criteria.where("exerciseType").in(filters.exerciseTypes));
+        }
 
+        if (!filters.authors.isEmpty()) {
+            if (strict) query.addCriteria(Criteria.where("author").all(filters.authors));
+            else        query.addCriteria(Criteria.where("author").in(filters.authors));
+        }
+    }
 
-        Page<Exercise> resultPage = getDocumentService().findPaginated(query, Exercise.class, pageable);
-        boolean hasNextPage = resultPage.getNumber() + 1 < resultPage.getTotalPages();
-        logger.debug("Number (Idx) : " + resultPage.getNumber());
-        logger.debug("Total Pages  : " + resultPage.getTotalPages());
-        logger.debug("Has Next     : " + hasNextPage);
+    private static List<String> idsOf(List<? extends MongoBaseModel> entities) {
+        return entities.stream().map(MongoBaseModel::getId).collect(Collectors.toList());
+    }
 
 
-        return new DataResponse<>(exercises, "Success!", hasNextPage);
+    /**
+     * Autocomplete on exercise names, served from memory. Prefix matches 
+     * (of the name or any of its words) come first, then near misses such 
+     * as {@code "bench pres"} or {@code "sqaut"}.
+     * 
+     * @param q     partial name as typed
+     * @param limit maximum number of suggestions
+     */
+    @GetMapping("/suggest")
+    public DataResponse<List<NameSuggestion>> suggest(
+        @RequestParam String q,
+        @RequestParam(required = false, defaultValue = "10") int limit
+    ) {
+        return new DataResponse<>(nameIndex.suggest(q, Math.min(limit, 50)), "Success!");
     }
 
 
@@ -166,10 +333,9 @@ public class ExerciseController implements INameController<Exercise>  {
     @PostMapping("/add")
     public DataResponse<Exercise> add(
         @RequestBody @Valid ExercisePostRequest exPostReq,
-        @CookieValue(name = "token", required = true)    String token,
-        @CookieValue(name = "username", required = true) String username
+        @CurrentUser User user
     ) throws EntityNotFoundException {
-        final Difficulty difficulty = difficultyRepo.findByName(exPostReq.getDifficulty())
+        final Difficulty difficulty = referenceCatalog.findByName(Difficulty.class, exPostReq.getDifficulty())
                                     .orElseThrow(()-> new EntityNotFoundException("Difficulty not found by name."));
         final Set<MuscleGroup> muscleGroups = new HashSet<MuscleGroup>(
                 findByNameInSpecificRepo(muscleGroupRepo, exPostReq.getMuscleGroups().toArray(new String[0]))
@@ -190,11 +356,6 @@ public class ExerciseController implements INameController<Exercise>  {
             .collect(Collectors.toSet());
 
 
-        
-        String[] ciphers = jwtUtility.decipher(token);
-        String tokenEmail           = ciphers[0];
-        User user                   = userRepository.findByEmail(tokenEmail)
-                                        .orElseThrow(() -> new EntityNotFoundException("User not found by email"));
         Exercise exercise = new Exercise(
             exPostReq.getName(), 
             exPostReq.getVideoURL(),
@@ -206,6 +367,7 @@ public class ExerciseController implements INameController<Exercise>  {
         exercise.setAuthor(user);
 
         exerciseRepo.save(exercise);
+        onEntitiesWritten();
 
         return new DataResponse<Exercise>(exercise, "Added new exercise.");
     }
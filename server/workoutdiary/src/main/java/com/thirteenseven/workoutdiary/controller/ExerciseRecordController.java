@@ -1,14 +1,19 @@
 package com.thirteenseven.workoutdiary.controller;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 // ~~~~~~~~ Spring ~~~~~~~~
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 // import org.springframework.boot.autoconfigure.data.web.SpringDataWebProperties.Pageable;
 import org.springframework.lang.NonNull;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.web.bind.annotation.CookieValue;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -28,9 +33,11 @@ import org.springframework.data.mongodb.core.aggregation.AggregationResults;
 import org.springframework.data.mongodb.core.aggregation.LookupOperation;
 import org.springframework.data.mongodb.core.aggregation.MatchOperation;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
 
 // ~~~~~~~~ Workout Diary ~~~~~~~~
 import com.thirteenseven.workoutdiary.controller.interfaces.INameController;
+import com.thirteenseven.workoutdiary.controller.resolvers.CurrentUser;
 import com.thirteenseven.workoutdiary.controller.interfaces.IRecordController;
 import com.thirteenseven.workoutdiary.dao.DifficultyRepository;
 import com.thirteenseven.workoutdiary.dao.ExerciseRecordRepository;
@@ -54,15 +61,33 @@ import com.thirteenseven.workoutdiary.model.User;
 import com.thirteenseven.workoutdiary.model.base.Location;
 import com.thirteenseven.workoutdiary.model.base.RepetitionsModel;
 import com.thirteenseven.workoutdiary.payload.request.ExerciseRecordPostRequest;
+import com.thirteenseven.workoutdiary.payload.response.BulkWriteResult;
+import com.thirteenseven.workoutdiary.payload.response.PageDataResponse;
 import com.thirteenseven.workoutdiary.payload.response.DataResponse;
+import com.thirteenseven.workoutdiary.payload.response.ImportReport;
+import com.thirteenseven.workoutdiary.payload.response.ProgressionPoint;
+import com.thirteenseven.workoutdiary.payload.response.RollupBucket;
+import com.thirteenseven.workoutdiary.service.BackgroundJobService.Job;
 import com.thirteenseven.workoutdiary.service.ExerciseRecordService;
+import com.thirteenseven.workoutdiary.service.ExerciseRecordService.Bucket;
+import com.thirteenseven.workoutdiary.service.ExerciseRecordService.ExportFormat;
 import com.thirteenseven.workoutdiary.service.ExerciseService;
+import com.thirteenseven.workoutdiary.service.RecordBucketService;
+import com.thirteenseven.workoutdiary.service.RecordRollupService;
+import com.thirteenseven.workoutdiary.service.RecordRollupService.Period;
+import com.thirteenseven.workoutdiary.service.RecordWriteBuffer;
+import com.thirteenseven.workoutdiary.service.ReferenceCatalogService;
 import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
+import com.thirteenseven.workoutdiary.service.base.BaseDocumentService.TotalCount;
 import com.thirteenseven.workoutdiary.utilities.JwtUtility;
+import com.thirteenseven.workoutdiary.utilities.KeysetCursor;
 import com.thirteenseven.workoutdiary.utilities.TimeUtility;
 import com.thirteenseven.workoutdiary.controller.interfaces.IBaseController;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 
 
 @RequestMapping("api/v1/exerciseRecord")
@@ -84,6 +109,18 @@ public class ExerciseRecordController implements IRecordController<ExerciseRecor
     private MuscleGroupRepository    muscleGroupRepository;
     @Autowired
     private UserRoleRepository       userRoleRepository;
+    @Autowired
+    private ReferenceCatalogService  referenceCatalog;
+    @Autowired
+    private RecordRollupService      recordRollups;
+    @Autowired
+    private RecordBucketService      recordBuckets;
+    @Autowired
+    private RecordWriteBuffer        recordWriteBuffer;
+    @Autowired
+    private ObjectMapper             objectMapper;
+    @Autowired
+    private Validator                validator;
 
 
     @Override
@@ -106,11 +143,19 @@ public class ExerciseRecordController implements IRecordController<ExerciseRecor
         return userRepository;
     }
 
+    @Override
+    public ReferenceCatalogService getReferenceCatalog() {
+        return referenceCatalog;
+    }
+
     // =====================================================
     // Get
     // =====================================================
     /** 
      * This controller can be used to query record for a user.
+     * 
+     * @param fields only these fields are read, see {@link #project}; 
+     *               {@code date} is always read for the cursor
      */
     @GetMapping("/search")
     public DataResponse<List<ExerciseRecord>> search(
@@ -121,14 +166,18 @@ public class ExerciseRecordController implements IRecordController<ExerciseRecor
         @RequestParam(required = false, defaultValue = "false") boolean self,
         @RequestParam(required = false, defaultValue = "0") int page, // Default page index is 0
         @RequestParam(required = false, defaultValue = "5") int size, // Default page size is 5
-        @CookieValue(name = "username", required = true) String username
+        @RequestParam(required = false) String cursor, // nextCursor of the previous page; overrides page
+        @RequestParam(required = false, defaultValue = "NONE") TotalCount total,
+        @RequestParam(required = false) List<String> fields,
+        @CurrentUser User user
     ) throws EntityNotFoundException {
-    
-        User user = userRepository.findByName(username)
-            .orElseThrow(() -> new EntityNotFoundException("User not found with username: " + username));
-
 
         Query query = new Query();
+        if (fields != null && !fields.isEmpty()) {
+            List<String> projected = new ArrayList<>(fields);
+            if (!projected.contains("date")) projected.add("date");
+            project(query, projected);
+        }
         
 
         if (exerciseNames != null) {
@@ -140,30 +189,192 @@ public class ExerciseRecordController implements IRecordController<ExerciseRecor
             }
         }
 
-        Role adminRole = userRoleRepository.findByName(Role.ERole.ROLE_ADMIN)
+        Role adminRole = referenceCatalog.findByName(Role.class, Role.ERole.ROLE_ADMIN.name())
             .orElseThrow(()-> new EntityNotFoundException("UserRole not found: Admin"));
             
         if (!user.getRoles().contains(adminRole) || self) {
             query.addCriteria(Criteria.where("user").is(user));
         }
 
-        Sort sort = Sort.by(Sort.Direction.DESC, "date");
+        Long                  totalCount = getDocumentService().countMatching(query, ExerciseRecord.class, total);
+        Slice<ExerciseRecord> slice;
+
+        if (cursor != null) {
+            /** Keyset page: a range query on (user, date, _id) instead of skip(page * size) */
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            slice = getDocumentService().findSeekPage(
+                query, ExerciseRecord.class, "date", after.getDate(), after.getId(), size
+            );
+        } else {
+            Sort     sort     = Sort.by(Sort.Direction.DESC, "date", "id");
+            Pageable pageable = PageRequest.of(page, size, sort);
+            slice = getDocumentService().findSlice(query, ExerciseRecord.class, pageable);
+        }
+        List<ExerciseRecord> records     = slice.getContent();
+        boolean              hasNextPage = slice.hasNext();
+        logger.debug("Has Next     : " + hasNextPage);
 
-        Pageable pageable = PageRequest.of(page, size, sort);
+        String nextCursor = null;
+        if (hasNextPage && !records.isEmpty()) {
+            ExerciseRecord last = records.get(records.size() - 1);
+            nextCursor = new KeysetCursor(last.getDate(), last.getId()).encode();
+        }
 
-        List<ExerciseRecord> records = getDocumentService().queryOnClass(query.with(pageable), ExerciseRecord.class);
+        /** Loaded references are trimmed here; a projection without them has nothing to trim */
+        boolean withReferences = fields == null || fields.isEmpty()
+            || fields.stream().anyMatch(field -> field.startsWith("user") || field.startsWith("exercise"));
+        if (withReferences) {
+            for (ExerciseRecord record : records) {
+                record.debulk(true);
+            }
+        }
 
-        Page<ExerciseRecord> resultPage = getDocumentService().findPaginated(query, ExerciseRecord.class, pageable);
-        boolean hasNextPage = resultPage.getNumber() + 1 < resultPage.getTotalPages();
-        logger.debug("Number (Idx) : " + resultPage.getNumber());
-        logger.debug("Total Pages  : " + resultPage.getTotalPages());
-        logger.debug("Has Next     : " + hasNextPage);
+        return new PageDataResponse<>(records, "Success!", hasNextPage, nextCursor, totalCount);
+    }
 
-        for (ExerciseRecord record : records) {
-            record.debulk(true);
+    /**
+     * Progression series of one exercise of the current user, e.g. for the
+     * exercise chart. Every statistic is computed by the database in one
+     * aggregation, so the client needs neither raw records nor paging.
+     * 
+     * @param from     inclusive, ISO date time; no lower bound if omitted
+     * @param to       exclusive, ISO date time; no upper bound if omitted
+     * @param bucket   SESSION (one point per record), DAY, WEEK or MONTH
+     * @param timezone used to cut the buckets
+     * @throws EntityNotFoundException if the exercise cannot be found
+     */
+    @GetMapping("/progression")
+    public DataResponse<List<ProgressionPoint>> progression(
+        @RequestParam String exerciseName,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+        @RequestParam(required = false, defaultValue = "SESSION") Bucket bucket,
+        @RequestParam(required = false, defaultValue = "UTC")     String timezone,
+        @CurrentUser User user
+    ) throws EntityNotFoundException {
+        final Exercise exercise = 
+                exerciseRepository.findByName(exerciseName)
+                .orElseThrow(()-> new EntityNotFoundException(entityNotFoundMsg(exerciseName)));
+
+        List<ProgressionPoint> points = exerciseRecordService.findProgression(user, exercise, from, to, bucket, timezone);
+        return new DataResponse<>(points, "Success!");
+    }
+
+    /**
+     * Downloads a user's records, oldest first, streamed from a database 
+     * cursor so memory use does not grow with the history.
+     * 
+     * @param format   NDJSON (one record per line) or CSV (one row per set)
+     * @param from     inclusive, ISO date time; no lower bound if omitted
+     * @param to       exclusive, ISO date time; no upper bound if omitted
+     * @param username whose records to export, admins only; the current user if omitted
+     * @throws EntityNotFoundException if the user cannot be found
+     * @throws UnauthorizedException   if a non-admin asks for another user
+     */
+    @GetMapping("/export")
+    public void export(
+        @RequestParam(required = false, defaultValue = "NDJSON") ExportFormat format,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+        @RequestParam(required = false) String username,
+        @CurrentUser User user,
+        HttpServletResponse response
+    ) throws EntityNotFoundException, UnauthorizedException, IOException {
+        User owner = user;
+        if (username != null && !username.equals(user.getName())) {
+            Role adminRole = referenceCatalog.findByName(Role.class, Role.ERole.ROLE_ADMIN.name())
+                .orElseThrow(()-> new EntityNotFoundException("UserRole not found: Admin"));
+            if (!user.getRoles().contains(adminRole))
+                throw new UnauthorizedException("Only admins can export the records of other users.");
+            owner = userRepository.findByName(username)
+                .orElseThrow(()-> new EntityNotFoundException(entityNotFoundMsg(username)));
+        }
+
+        response.setContentType(format.contentType + ";charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"exercise-records." + format.extension + "\"");
+        long count = exerciseRecordService.export(owner, from, to, format, response.getOutputStream());
+        logger.debug("Exported " + count + " record(s) of " + owner.getName());
+    }
+
+    /**
+     * Daily or weekly totals of the current user, read from the rollups.
+     * 
+     * @param exerciseName only this exercise; all exercises summed up if omitted
+     * @param from         inclusive bucket start, ISO date time
+     * @param to           exclusive bucket start, ISO date time
+     * @throws EntityNotFoundException if the exercise cannot be found
+     */
+    @GetMapping("/rollups")
+    public DataResponse<List<RollupBucket>> rollups(
+        @RequestParam(required = false) String exerciseName,
+        @RequestParam(required = false, defaultValue = "WEEK") Period period,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+        @CurrentUser User user
+    ) throws EntityNotFoundException {
+        Exercise exercise = null;
+        if (exerciseName != null) {
+            exercise = exerciseRepository.findByName(exerciseName)
+                .orElseThrow(()-> new EntityNotFoundException(entityNotFoundMsg(exerciseName)));
         }
+        return new DataResponse<>(recordRollups.find(user, exercise, period, from, to), "Success!");
+    }
+
+    /**
+     * Recomputes the rollups from the raw records and reports how many 
+     * buckets were missing, extra or wrong.
+     * 
+     * @param verifyOnly only report, leave the rollups as they are
+     */
+    @PostMapping("/rollups/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public DataResponse<Map<String, Long>> rebuildRollups(
+        @RequestParam(required = false, defaultValue = "false") boolean verifyOnly
+    ) {
+        Map<String, Long> report = recordRollups.rebuild(verifyOnly);
+        return new DataResponse<>(report, verifyOnly ? "Rollups verified." : "Rollups rebuilt.");
+    }
 
-        return new DataResponse<>(records, "Success!", hasNextPage);
+    /**
+     * Rebuilds the monthly record buckets from the record documents in a
+     * background job; run it once after switching to the bucket storage mode.
+     * Reads move to the buckets when the job completes.
+     */
+    @PostMapping("/buckets/migrate")
+    @PreAuthorize("hasRole('ADMIN')")
+    public DataResponse<Job> migrateBuckets() {
+        return new DataResponse<>(recordBuckets.migrate(), "Bucket migration started.");
+    }
+
+    /**
+     * Compares the document and bucket layouts: counts, storage and index
+     * bytes, and the median latency of reading the current user's sessions 
+     * of one exercise in a date range from each, as raw sessions and as the
+     * {@link #progression} series, whose points must agree.
+     * 
+     * @param bucket   granularity of the compared progression series
+     * @param timezone used to cut its buckets
+     * @param runs     times each range query is run
+     * @throws EntityNotFoundException if the exercise cannot be found
+     */
+    @GetMapping("/buckets/compare")
+    @PreAuthorize("hasRole('ADMIN')")
+    public DataResponse<Map<String, Long>> compareBuckets(
+        @RequestParam String exerciseName,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date from,
+        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Date to,
+        @RequestParam(required = false, defaultValue = "SESSION") Bucket bucket,
+        @RequestParam(required = false, defaultValue = "UTC")     String timezone,
+        @RequestParam(required = false, defaultValue = "20") int runs,
+        @CurrentUser User user
+    ) throws EntityNotFoundException {
+        if (runs < 1 || runs > 1000) throw new IllegalArgumentException("runs must be between 1 and 1000.");
+        final Exercise exercise = 
+                exerciseRepository.findByName(exerciseName)
+                .orElseThrow(()-> new EntityNotFoundException(entityNotFoundMsg(exerciseName)));
+        Map<String, Long> report = recordBuckets.compare(user, exercise, from, to, runs);
+        report.putAll(exerciseRecordService.compareProgression(user, exercise, from, to, bucket, timezone, runs));
+        return new DataResponse<>(report, report.get("progressionMismatches") == 0 ? "Layouts compared." : "Layouts differ.");
     }
 
 
@@ -178,16 +389,13 @@ public class ExerciseRecordController implements IRecordController<ExerciseRecor
     @PostMapping(path = "/add", consumes = "application/json")
     public DataResponse<ExerciseRecord> add(
         @RequestBody @Valid ExerciseRecordPostRequest exRecordPostReq,
-        @CookieValue(name = "username", required = true) String username
+        @CurrentUser User kUser
     
     ) throws EntityNotFoundException, IllegalArgumentException {
         String kExerciseName = exRecordPostReq.getExerciseName();
         final Exercise kExercise = 
                 exerciseRepository.findByName(kExerciseName)
                 .orElseThrow(()-> new EntityNotFoundException(entityNotFoundMsg(kExerciseName)));
-        final User kUser = 
-                userRepository.findByName(username)
-                .orElseThrow(()-> new EntityNotFoundException(username));
         final ExerciseRecord exerciseRecord = new ExerciseRecord(
             exRecordPostReq.getDatetime(),
             kUser,
@@ -196,10 +404,126 @@ public class ExerciseRecordController implements IRecordController<ExerciseRecor
             exRecordPostReq.getNote(),
             new Location(exRecordPostReq.getLocation()[0], exRecordPostReq.getLocation()[1])
         );
-        exerciseRecordRepository.save(exerciseRecord);
+        if (recordWriteBuffer.isEnabled()) {
+            /** The buffer updates the rollups once the record is in the database */
+            recordWriteBuffer.insert(exerciseRecord);
+        } else {
+            exerciseRecordRepository.save(exerciseRecord);
+            recordRollups.add(exerciseRecord);
+            recordBuckets.add(exerciseRecord);
+        }
 
         return new DataResponse<>(exerciseRecord, "Added new exercise record.");
     }
+
+
+
+
+    /**
+     * Imports records of the current user from an NDJSON body, one record 
+     * per line shaped like the body of {@link #add}, as the NDJSON export 
+     * writes them. The body is streamed and written in unordered bulk
+     * inserts, so imports of any size use bounded memory.
+     * 
+     * @return counts, and every rejected line with the reason
+     */
+    @PostMapping(path = "/import", consumes = "application/x-ndjson")
+    public DataResponse<ImportReport> importNdjson(
+        HttpServletRequest request,
+        @CurrentUser User user
+    ) throws IOException {
+        ImportReport report = importSession(user).readNdjson(request.getReader());
+        return importResponse(report);
+    }
+
+    /**
+     * Same as {@link #importNdjson} for a CSV body in the layout of the CSV 
+     * export: one row per set, rows of one record next to each other.
+     */
+    @PostMapping(path = "/import", consumes = "text/csv")
+    public DataResponse<ImportReport> importCsv(
+        HttpServletRequest request,
+        @CurrentUser User user
+    ) throws IOException {
+        ImportReport report = importSession(user).readCsv(request.getReader());
+        return importResponse(report);
+    }
+
+    private RecordImportSession importSession(User user) {
+        return new RecordImportSession(
+            exerciseRecordService, exerciseRepository, recordRollups, recordBuckets, objectMapper, validator, user
+        );
+    }
+
+    private DataResponse<ImportReport> importResponse(ImportReport report) {
+        if (report.getInserted() > 0) onEntitiesWritten();
+        return new DataResponse<>(
+            report, "Imported " + report.getInserted() + " of " + report.getItems() + " record(s)."
+        );
+    }
+
+
+
+
+    // =====================================================
+    // Rollup maintenance
+    // =====================================================
+    /** 
+     * The generic write endpoints are wrapped so every change of a record is
+     * also applied to its rollups. Mappings and security come from the 
+     * interface methods.
+     */
+    @Override
+    public boolean needsPreviousOnPatch() {
+        /** The patch only returns the new state; the rollups need the old one too */
+        return true;
+    }
+
+    @Override
+    public void onEntityPatched(ExerciseRecord before, ExerciseRecord after) {
+        /** Both images belong to this very patch; a soft-deleted state counts for nothing */
+        ExerciseRecord counted   = exerciseRecordService.isSoftDeleted(before) ? null : before;
+        ExerciseRecord replacing = exerciseRecordService.isSoftDeleted(after)  ? null : after;
+        recordRollups.replace(counted, replacing);
+        recordBuckets.replace(counted, replacing);
+    }
+
+    @Override
+    public DataResponse<BulkWriteResult<ExerciseRecord>> deleteById(List<String> ids, boolean returnDocuments) {
+        /** The rollups need the deleted records either way; soft-deleted ones were taken out already */
+        DataResponse<BulkWriteResult<ExerciseRecord>> response = IRecordController.super.deleteById(ids, true);
+        BulkWriteResult<ExerciseRecord>               result   = response.getData();
+        List<ExerciseRecord>                          live     = result.getDocuments().stream()
+            .filter(record -> !exerciseRecordService.isSoftDeleted(record))
+            .collect(Collectors.toList());
+        recordRollups.remove(live);
+        recordBuckets.remove(live);
+        return returnDocuments ? response : new DataResponse<>(result.withoutDocuments(), entityDeletedMsg(ids.toString()));
+    }
+
+    @Override
+    public void onAllEntitiesDeleted() {
+        /** Also runs at the end of a background delete, never after a cancelled one */
+        recordRollups.clear();
+        recordBuckets.clear();
+    }
+
+    @Override
+    public DataResponse<BulkWriteResult<ExerciseRecord>> softDeleteById(List<String> ids) {
+        /** Only records whose flag flipped are returned, so a repeated call takes nothing out twice */
+        DataResponse<BulkWriteResult<ExerciseRecord>> response = IRecordController.super.softDeleteById(ids);
+        recordRollups.remove(response.getData().getDocuments());
+        recordBuckets.remove(response.getData().getDocuments());
+        return response;
+    }
+
+    @Override
+    public DataResponse<BulkWriteResult<ExerciseRecord>> unsoftDeleteById(List<String> ids) {
+        DataResponse<BulkWriteResult<ExerciseRecord>> response = IRecordController.super.unsoftDeleteById(ids);
+        recordRollups.add(response.getData().getDocuments());
+        recordBuckets.add(response.getData().getDocuments());
+        return response;
+    }
     
 
     
@@ -20,6 +20,8 @@ import com.thirteenseven.workoutdiary.dao.ExerciseTypeRepository;
 import com.thirteenseven.workoutdiary.dao.interfaces.INameRepository;
 import com.thirteenseven.workoutdiary.model.ExerciseType;
 import com.thirteenseven.workoutdiary.model.base.NameBasedModel;
+import com.thirteenseven.workoutdiary.service.ExerciseTypeService;
+import com.thirteenseven.workoutdiary.service.ReferenceCatalogService;
 import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
 
 
@@ -35,6 +37,10 @@ public class ExerciseTypeController implements INameController<ExerciseType> {
     private PasswordEncoder         encoder;
     @Autowired
     private ExerciseTypeRepository  exerciseTypeRepository;
+    @Autowired
+    private ExerciseTypeService     exerciseTypeService;
+    @Autowired
+    private ReferenceCatalogService referenceCatalog;
     
 
     // =======================================================================
@@ -54,6 +60,16 @@ public class ExerciseTypeController implements INameController<ExerciseType> {
         return encoder;
     }
 
+    @Override
+    public BaseDocumentService getDocumentService() {
+        return exerciseTypeService;
+    }
+
+    @Override
+    public ReferenceCatalogService getReferenceCatalog() {
+        return referenceCatalog;
+    }
+
     
     @Override
     public ExerciseType newEntityByName(String name) {
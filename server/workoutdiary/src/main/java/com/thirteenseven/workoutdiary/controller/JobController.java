@@ -0,0 +1,58 @@
+package com.thirteenseven.workoutdiary.controller;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.List;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.exception.EntityNotFoundException;
+import com.thirteenseven.workoutdiary.payload.response.DataResponse;
+import com.thirteenseven.workoutdiary.service.BackgroundJobService;
+import com.thirteenseven.workoutdiary.service.BackgroundJobService.Job;
+
+
+/**
+ * Status of the background maintenance jobs, for admins.
+ */
+@RequestMapping("api/v1/jobs")
+@RestController
+@PreAuthorize("hasRole('ADMIN')")
+public class JobController {
+
+    // =======================================================================
+    // dependency injection
+    // =======================================================================
+    @Autowired
+    private BackgroundJobService backgroundJobs;
+
+
+    // =======================================================================
+    // REST
+    // =======================================================================
+    @GetMapping
+    public DataResponse<List<Job>> list() {
+        return new DataResponse<>(backgroundJobs.list(), "Found job(s).");
+    }
+
+    @GetMapping("/{id}")
+    public DataResponse<Job> get(@PathVariable String id) throws EntityNotFoundException {
+        Job job = backgroundJobs.get(id);
+        if (job == null) throw new EntityNotFoundException("Job not found: " + id);
+        return new DataResponse<>(job, "Found job.");
+    }
+
+    /** Stops the job after its current batch. */
+    @DeleteMapping("/{id}")
+    public DataResponse<Job> cancel(@PathVariable String id) throws EntityNotFoundException {
+        if (!backgroundJobs.cancel(id)) throw new EntityNotFoundException("Job not found: " + id);
+        return new DataResponse<>(backgroundJobs.get(id), "Job cancelled.");
+    }
+}
@@ -0,0 +1,91 @@
+package com.thirteenseven.workoutdiary.controller;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.Map;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.payload.response.DataResponse;
+import com.thirteenseven.workoutdiary.service.AuthTokenCacheService;
+import com.thirteenseven.workoutdiary.service.IdempotencyService;
+import com.thirteenseven.workoutdiary.service.MongoCommandStats;
+import com.thirteenseven.workoutdiary.service.RecordRollupService;
+import com.thirteenseven.workoutdiary.service.RecordWriteBuffer;
+import com.thirteenseven.workoutdiary.service.ReferenceCatalogService;
+
+
+/**
+ * Read-only counters of the in-process caches and buffers, for admins.
+ */
+@RequestMapping("api/v1/metrics")
+@RestController
+public class MetricsController {
+
+    // =======================================================================
+    // dependency injection
+    // =======================================================================
+    @Autowired
+    private ReferenceCatalogService referenceCatalog;
+    @Autowired
+    private AuthTokenCacheService   authTokenCache;
+    @Autowired
+    private RecordWriteBuffer       recordWriteBuffer;
+    @Autowired
+    private IdempotencyService      idempotency;
+    @Autowired
+    private MongoCommandStats       mongoCommandStats;
+    @Autowired
+    private RecordRollupService     recordRollups;
+
+
+    // =======================================================================
+    // REST
+    // =======================================================================
+    /** Hit/miss counters and version stamps of the reference catalog. */
+    @GetMapping("/catalog")
+    @PreAuthorize("hasRole('ADMIN')")
+    public DataResponse<Map<String, Map<String, Long>>> getCatalogStats() {
+        return new DataResponse<>(referenceCatalog.getStats(), "Reference catalog stats.");
+    }
+
+    /** Verified-token cache counters and auth filter latency. */
+    @GetMapping("/auth")
+    @PreAuthorize("hasRole('ADMIN')")
+    public DataResponse<Map<String, Long>> getAuthStats() {
+        return new DataResponse<>(authTokenCache.getStats(), "Auth cache stats.");
+    }
+
+    /** Batches, throughput and flush latency of the record group commit. */
+    @GetMapping("/groupCommit")
+    @PreAuthorize("hasRole('ADMIN')")
+    public DataResponse<Map<String, Long>> getGroupCommitStats() {
+        return new DataResponse<>(recordWriteBuffer.getStats(), "Group commit stats.");
+    }
+
+    /** Claims, replays and conflicts of idempotency keys. */
+    @GetMapping("/idempotency")
+    @PreAuthorize("hasRole('ADMIN')")
+    public DataResponse<Map<String, Long>> getIdempotencyStats() {
+        return new DataResponse<>(idempotency.getStats(), "Idempotency stats.");
+    }
+
+    /** MongoDB commands sent, in total and per request of each endpoint. */
+    @GetMapping("/mongo")
+    @PreAuthorize("hasRole('ADMIN')")
+    public DataResponse<Map<String, Long>> getMongoStats() {
+        return new DataResponse<>(mongoCommandStats.getStats(), "MongoDB command stats.");
+    }
+
+    /** Records the rollups had to leave out. */
+    @GetMapping("/rollups")
+    @PreAuthorize("hasRole('ADMIN')")
+    public DataResponse<Map<String, Long>> getRollupStats() {
+        return new DataResponse<>(recordRollups.getStats(), "Rollup stats.");
+    }
+}
@@ -17,6 +17,9 @@ import com.thirteenseven.workoutdiary.dao.interfaces.INameRepository;
 import com.thirteenseven.workoutdiary.exception.EntityNotFoundException;
 import com.thirteenseven.workoutdiary.model.MuscleGroup;
 import com.thirteenseven.workoutdiary.payload.response.DataResponse;
+import com.thirteenseven.workoutdiary.service.MuscleGroupService;
+import com.thirteenseven.workoutdiary.service.ReferenceCatalogService;
+import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
 
 import jakarta.validation.Valid;
 
@@ -33,6 +36,10 @@ public class MuscleGrpController implements INameController<MuscleGroup> {
 
     @Autowired
     private MuscleGroupRepository muscleGroupRepo;
+    @Autowired
+    private MuscleGroupService    muscleGroupService;
+    @Autowired
+    private ReferenceCatalogService referenceCatalog;
 
     @Override
     public INameRepository<MuscleGroup, String> getModelRepo() {
@@ -45,6 +52,16 @@ public class MuscleGrpController implements INameController<MuscleGroup> {
         throw new UnsupportedOperationException("Unimplemented method 'getEncoder'");
     }
 
+    @Override
+    public BaseDocumentService getDocumentService() {
+        return muscleGroupService;
+    }
+
+    @Override
+    public ReferenceCatalogService getReferenceCatalog() {
+        return referenceCatalog;
+    }
+
 
 
 
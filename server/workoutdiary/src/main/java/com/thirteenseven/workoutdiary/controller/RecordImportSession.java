@@ -0,0 +1,268 @@
+package com.thirteenseven.workoutdiary.controller;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.dao.ExerciseRepository;
+import com.thirteenseven.workoutdiary.model.Exercise;
+import com.thirteenseven.workoutdiary.model.ExerciseRecord;
+import com.thirteenseven.workoutdiary.model.User;
+import com.thirteenseven.workoutdiary.model.base.Location;
+import com.thirteenseven.workoutdiary.payload.request.ExerciseRecordPostRequest;
+import com.thirteenseven.workoutdiary.payload.response.ImportReport;
+import com.thirteenseven.workoutdiary.payload.response.ItemResult;
+import com.thirteenseven.workoutdiary.service.ExerciseRecordService;
+import com.thirteenseven.workoutdiary.service.RecordBucketService;
+import com.thirteenseven.workoutdiary.service.RecordRollupService;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+
+/**
+ * Reads one import request body line by line and writes the records in
+ * unordered bulk inserts of {@link #CHUNK_SIZE}. The body is only read
+ * while the previous chunk is not being written, so a fast client is held
+ * back by the database instead of filling the heap.
+ * <p>
+ * Items are bound and validated like the body of {@code /add}. Exercise
+ * names are looked up once per import, whatever the number of records.
+ */
+final class RecordImportSession {
+
+    static final int CHUNK_SIZE = 1000;
+
+    private static final TypeReference<Map<String, Object>> ITEM = new TypeReference<>() {};
+
+    private final ExerciseRecordService            recordService;
+    private final ExerciseRepository               exerciseRepository;
+    private final RecordRollupService              recordRollups;
+    private final RecordBucketService              recordBuckets;
+    private final ObjectMapper                     mapper;
+    private final Validator                        validator;
+    private final User                             user;
+    /** Exercise by name, including the names which do not exist */
+    private final Map<String, Optional<Exercise>>  exercises    = new HashMap<>();
+    private final List<ItemResult>                 errors       = new ArrayList<>();
+    private final List<ExerciseRecord>             pending      = new ArrayList<>(CHUNK_SIZE);
+    /** Line of each pending record */
+    private final List<Integer>                    pendingLines = new ArrayList<>(CHUNK_SIZE);
+    private       int                              items        = 0;
+    private       long                             inserted     = 0;
+
+
+    RecordImportSession(
+        ExerciseRecordService recordService,
+        ExerciseRepository    exerciseRepository,
+        RecordRollupService   recordRollups,
+        RecordBucketService   recordBuckets,
+        ObjectMapper          mapper,
+        Validator             validator,
+        User                  user
+    ) {
+        this.recordService      = recordService;
+        this.exerciseRepository = exerciseRepository;
+        this.recordRollups      = recordRollups;
+        this.recordBuckets      = recordBuckets;
+        this.mapper             = mapper;
+        this.validator          = validator;
+        this.user               = user;
+    }
+
+
+    // =======================================================================
+    // Readers
+    // =======================================================================
+    /**
+     * One record per line, shaped like the body of {@code /add}, which is 
+     * also the shape of the NDJSON export. {@code exercise} and {@code date}
+     * are accepted for {@code exerciseName} and {@code datetime}.
+     */
+    ImportReport readNdjson(BufferedReader reader) throws IOException {
+        String line;
+        int    lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            Map<String, Object> item;
+            try {
+                item = mapper.readValue(line, ITEM);
+            } catch (JsonProcessingException e) {
+                items++;
+                failed(lineNumber, null, "Invalid JSON: " + e.getOriginalMessage());
+                continue;
+            }
+            if (!item.containsKey("exerciseName")) item.put("exerciseName", item.remove("exercise"));
+            if (!item.containsKey("datetime"))     item.put("datetime",     item.remove("date"));
+            add(lineNumber, item);
+        }
+        return finish();
+    }
+
+    /**
+     * The layout of the CSV export: a header, then one row per set with the
+     * weights of its repetitions separated by spaces. Consecutive rows with
+     * the same {@code id} (or, without that column, the same {@code date}
+     * and {@code exercise}) form one record. Quoted values cannot span lines.
+     */
+    ImportReport readCsv(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        if (header == null) return finish();
+        Map<String, Integer> columns = new HashMap<>();
+        List<String>         names   = splitCsv(header);
+        for (int i = 0; i < names.size(); i++) columns.put(names.get(i).strip().toLowerCase(), i);
+        if (!columns.keySet().containsAll(Set.of("date", "exercise", "weights")))
+            throw new IllegalArgumentException("CSV header needs the columns date, exercise and weights.");
+
+        Map<String, Object> record      = null;
+        String              recordKey   = null;
+        int                 recordLine  = 0;
+        String              line;
+        int                 lineNumber  = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            List<String> row      = splitCsv(line);
+            String       date     = column(row, columns, "date");
+            String       exercise = column(row, columns, "exercise");
+            String       id       = column(row, columns, "id");
+            String       key      = columns.containsKey("id") ? id : date + "\u0000" + exercise;
+
+            if (record == null || !Objects.equals(key, recordKey)) {
+                if (record != null) add(recordLine, record);
+                record     = new LinkedHashMap<>();
+                recordKey  = key;
+                recordLine = lineNumber;
+                record.put("exerciseName", exercise);
+                record.put("datetime",     date);
+                record.put("note",         column(row, columns, "note"));
+                record.put("sets",         new ArrayList<Map<String, Object>>());
+            }
+
+            String weights = column(row, columns, "weights");
+            if (weights == null || weights.isBlank()) continue;
+            List<String> repetitions = new ArrayList<>();
+            for (String weight : weights.strip().split("\\s+")) repetitions.add(weight);
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> sets = (List<Map<String, Object>>) record.get("sets");
+            sets.add(Map.of("repetitions", repetitions));
+        }
+        if (record != null) add(recordLine, record);
+        return finish();
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    /** Binds, validates and resolves one item, flushing a full chunk. */
+    private void add(int line, Map<String, Object> item) {
+        items++;
+        String exerciseName = Objects.toString(item.get("exerciseName"), null);
+
+        ExerciseRecordPostRequest request;
+        try {
+            request = mapper.convertValue(item, ExerciseRecordPostRequest.class);
+        } catch (IllegalArgumentException e) {
+            failed(line, exerciseName, e.getMessage());
+            return;
+        }
+        Set<ConstraintViolation<ExerciseRecordPostRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            ConstraintViolation<ExerciseRecordPostRequest> violation = violations.iterator().next();
+            failed(line, exerciseName, violation.getPropertyPath() + " " + violation.getMessage());
+            return;
+        }
+
+        Optional<Exercise> exercise = exercises.computeIfAbsent(request.getExerciseName(), exerciseRepository::findByName);
+        if (exercise.isEmpty()) {
+            failed(line, exerciseName, "Exercise not found: " + request.getExerciseName());
+            return;
+        }
+
+        boolean hasLocation = request.getLocation() != null && request.getLocation().length >= 2;
+        pending.add(new ExerciseRecord(
+            request.getDatetime(),
+            user,
+            exercise.get(),
+            request.getSets(),
+            request.getNote(),
+            hasLocation ? new Location(request.getLocation()[0], request.getLocation()[1]) : null
+        ));
+        pendingLines.add(line);
+        if (pending.size() >= CHUNK_SIZE) flush();
+    }
+
+    private ImportReport finish() {
+        flush();
+        errors.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+        return new ImportReport(items, inserted, errors);
+    }
+
+    private void flush() {
+        if (pending.isEmpty()) return;
+        Map<Integer, String> failures = recordService.insertAll(ExerciseRecord.class, pending);
+
+        List<ExerciseRecord> written = new ArrayList<>(pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            String failure = failures.get(i);
+            if (failure == null) {
+                written.add(pending.get(i));
+            } else {
+                errors.add(new ItemResult(pendingLines.get(i), null, ItemResult.Outcome.FAILED, failure));
+            }
+        }
+        recordRollups.add(written);
+        recordBuckets.add(written);
+        inserted += written.size();
+        pending.clear();
+        pendingLines.clear();
+    }
+
+    private void failed(int line, String key, String message) {
+        errors.add(new ItemResult(line, key, ItemResult.Outcome.FAILED, message));
+    }
+
+    private static String column(List<String> row, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index == null || index >= row.size() ? null : row.get(index);
+    }
+
+    /** Splits a CSV line; double quotes enclose values and escape themselves. */
+    private static List<String> splitCsv(String line) {
+        List<String>  values  = new ArrayList<>();
+        StringBuilder value   = new StringBuilder();
+        boolean       quoted  = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"')                                                 value.append(c);
+                else if (i + 1 < line.length() && line.charAt(i + 1) == '"') { value.append('"'); i++; }
+                else                                                          quoted = false;
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+}
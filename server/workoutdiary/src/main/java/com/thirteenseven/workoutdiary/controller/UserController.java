@@ -6,7 +6,6 @@ import java.util.stream.Stream;
 // ~~~~~~~~ Spring ~~~~~~~~
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
-import org.springframework.web.bind.annotation.CookieValue;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -18,12 +17,14 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.thirteenseven.workoutdiary.controller.interfaces.INameController;
+import com.thirteenseven.workoutdiary.controller.resolvers.CurrentUser;
 import com.thirteenseven.workoutdiary.dao.UserRepository;
-import com.thirteenseven.workoutdiary.dao.UserRoleRepository;
 import com.thirteenseven.workoutdiary.dao.interfaces.INameRepository;
 import com.thirteenseven.workoutdiary.exception.EntityNotFoundException;
 import com.thirteenseven.workoutdiary.model.User;
 import com.thirteenseven.workoutdiary.payload.response.DataResponse;
+import com.thirteenseven.workoutdiary.service.AuthTokenCacheService;
+import com.thirteenseven.workoutdiary.service.ReferenceCatalogService;
 import com.thirteenseven.workoutdiary.service.UserService;
 import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
 import com.thirteenseven.workoutdiary.utilities.TimeUtility;
@@ -39,11 +40,13 @@ public class UserController implements INameController<User> {
     @Autowired
     private PasswordEncoder         encoder;
     @Autowired
-    private UserRoleRepository      roleRepo;
-    @Autowired
     private UserRepository          userRepo;
     @Autowired
     private UserService             userService;
+    @Autowired
+    private ReferenceCatalogService referenceCatalog;
+    @Autowired
+    private AuthTokenCacheService   authTokenCache;
     
 
     // =======================================================================
@@ -77,7 +80,7 @@ public class UserController implements INameController<User> {
 
         if (json.containsKey("roles")) {
             Set<String> roleStrings = new HashSet<>((List<String>) json.get("roles"));
-            newEntity.setRoles(roleRepo.getRoles(roleStrings));
+            newEntity.setRoles(referenceCatalog.getRoles(roleStrings));
         }
     }
 
@@ -87,6 +90,19 @@ public class UserController implements INameController<User> {
         return userService;
     }
 
+    /** Credentials are never exposed through {@code /queryField}. */
+    @Override
+    public Set<String> getQueryableFields() {
+        return Set.of("id", "name", "email", "birthday", "gender", "profilePicURL", "roles");
+    }
+
+    /** Cached {@code UserDetails} may carry stale roles or credentials. */
+    @Override
+    public void onEntitiesWritten() {
+        INameController.super.onEntitiesWritten();
+        authTokenCache.evictAll();
+    }
+
     // =======================================================================
     // New CRUD
     // =======================================================================
@@ -100,9 +116,8 @@ public class UserController implements INameController<User> {
      */
     @GetMapping(path = "/getCurrent")
     public DataResponse<User> getCurrentUser(
-        @CookieValue(name = "username", required = true) String username
+        @CurrentUser(required = false) User cUser
     ) throws EntityNotFoundException {
-        User cUser = userRepo.findByName(username).orElse(null);
         return new DataResponse<>(cUser, "Found user.");
     }
 }
\ No newline at end of file
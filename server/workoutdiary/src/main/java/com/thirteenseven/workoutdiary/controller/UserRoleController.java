@@ -7,6 +7,10 @@ import com.thirteenseven.workoutdiary.dao.UserRoleRepository;
 import com.thirteenseven.workoutdiary.dao.interfaces.INameRepository;
 import com.thirteenseven.workoutdiary.model.Role;
 import com.thirteenseven.workoutdiary.model.base.NameBasedModel;
+import com.thirteenseven.workoutdiary.service.AuthTokenCacheService;
+import com.thirteenseven.workoutdiary.service.ReferenceCatalogService;
+import com.thirteenseven.workoutdiary.service.UserRoleService;
+import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
 
 // ~~~~~~~~ standard ~~~~~~~~
 // ~~~~~~~~ Spring ~~~~~~~~
@@ -28,6 +32,12 @@ public class UserRoleController implements INameController<Role> {
     // =====================================================
     @Autowired
     private UserRoleRepository  userRoleRepository;
+    @Autowired
+    private UserRoleService     userRoleService;
+    @Autowired
+    private ReferenceCatalogService referenceCatalog;
+    @Autowired
+    private AuthTokenCacheService   authTokenCache;
 
 
     // =====================================================
@@ -38,6 +48,23 @@ public class UserRoleController implements INameController<Role> {
         return userRoleRepository;
     }
 
+    @Override
+    public BaseDocumentService getDocumentService() {
+        return userRoleService;
+    }
+
+    @Override
+    public ReferenceCatalogService getReferenceCatalog() {
+        return referenceCatalog;
+    }
+
+    /** Cached {@code UserDetails} may carry stale roles or credentials. */
+    @Override
+    public void onEntitiesWritten() {
+        INameController.super.onEntitiesWritten();
+        authTokenCache.evictAll();
+    }
+
     @Override
     public Role newEntityByName(String name) {
         if (NameBasedModel.class.isAssignableFrom(Role.class)) {
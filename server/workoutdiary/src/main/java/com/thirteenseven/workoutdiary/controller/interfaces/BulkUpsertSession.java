@@ -0,0 +1,111 @@
+package com.thirteenseven.workoutdiary.controller.interfaces;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+// ~~~~~~~~ thirteenseven ~~~~~~~~
+import com.thirteenseven.workoutdiary.model.base.NameBasedModel;
+import com.thirteenseven.workoutdiary.payload.response.ItemResult;
+
+
+/**
+ * Collects the items of one bulk upsert request, builds the entities and 
+ * hands them to {@code BaseDocumentService#upsertAllByKey} in chunks of 
+ * {@link #CHUNK_SIZE}, so an NDJSON stream of any length is written with a 
+ * bounded number of entities in memory.
+ * <p>
+ * Items sent twice (same name) are reported as {@code DUPLICATE}; only the 
+ * first one is written. An existing entity only gets the properties its 
+ * item sent; the defaults of the rest only apply to new entities.
+ */
+final class BulkUpsertSession<T extends NameBasedModel> {
+
+    static final int CHUNK_SIZE = 1000;
+
+    private final INameController<T> controller;
+    private final boolean            insertOnly;
+    private final Set<String>        seenNames      = new HashSet<>();
+    private final List<ItemResult>   results        = new ArrayList<>();
+    private final List<T>            pending        = new ArrayList<>(CHUNK_SIZE);
+    /** Item index of each pending entity */
+    private final List<Integer>      pendingIndexes = new ArrayList<>(CHUNK_SIZE);
+    /** Properties the client sent for each pending entity */
+    private final List<Set<String>>  pendingSent    = new ArrayList<>(CHUNK_SIZE);
+    private       int                nextIndex      = 0;
+
+
+    BulkUpsertSession(INameController<T> controller, boolean insertOnly) {
+        this.controller = controller;
+        this.insertOnly = insertOnly;
+    }
+
+
+    /** Adds one client item, flushing a full chunk. */
+    void add(Map<String, Object> item) {
+        int               index = nextIndex++;
+        EntityBindingPlan plan  = EntityBindingPlan.of(controller.getModelClass());
+        T                 entity;
+        Set<String>       sent;
+        try {
+            entity = plan.create(item);
+            Object[] constructed = plan.updatableValues(entity);
+            controller.updateWithSpecificRule(entity, item);
+            sent = plan.sentProperties(item, constructed, entity);
+        } catch (Exception e) {
+            failed(index, item == null ? null : Objects.toString(item.get("name"), null), e.getMessage());
+            return;
+        }
+
+        String name = entity.getName();
+        if (name == null || name.isBlank()) {
+            failed(index, null, "Missing name.");
+            return;
+        }
+        if (!seenNames.add(name)) {
+            results.add(new ItemResult(index, name, ItemResult.Outcome.DUPLICATE, "Sent more than once."));
+            return;
+        }
+
+        pending.add(entity);
+        pendingIndexes.add(index);
+        pendingSent.add(sent);
+        if (pending.size() >= CHUNK_SIZE) flush();
+    }
+
+    /** Reports an item which could not even be parsed. */
+    void addUnreadable(String message) {
+        failed(nextIndex++, null, message);
+    }
+
+    /** Writes what is left and returns every result in item order. */
+    List<ItemResult> finish() {
+        flush();
+        results.sort((a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+        return results;
+    }
+
+
+    private void flush() {
+        if (pending.isEmpty()) return;
+        List<ItemResult> written = controller.getDocumentService().upsertAllByKey(
+            controller.getModelClass(), "name", NameBasedModel::getName, pending, pendingSent, insertOnly
+        );
+        /** Written results are indexed by chunk position; map them back to item indexes */
+        for (int i = 0; i < written.size(); i++) {
+            ItemResult result = written.get(i);
+            results.add(new ItemResult(pendingIndexes.get(i), result.getKey(), result.getOutcome(), result.getMessage()));
+        }
+        pending.clear();
+        pendingIndexes.clear();
+        pendingSent.clear();
+    }
+
+    private void failed(int index, String key, String message) {
+        results.add(new ItemResult(index, key, ItemResult.Outcome.FAILED, message));
+    }
+}
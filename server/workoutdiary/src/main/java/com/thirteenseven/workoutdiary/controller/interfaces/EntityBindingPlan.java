@@ -0,0 +1,250 @@
+package com.thirteenseven.workoutdiary.controller.interfaces;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// ~~~~~~~~ thirteenseven ~~~~~~~~
+import com.thirteenseven.workoutdiary.model.annotations.PutUpdatableField;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+
+/**
+ * A per-model-class binding plan used by {@link IBaseController#updateEntityById}.
+ * <p>
+ * Scanning constructors, {@link JsonProperty} parameters and
+ * {@link PutUpdatableField} fields is done once per class; the result is
+ * compiled into {@link MethodHandle}s and cached in a {@link ClassValue}, so
+ * every later request only pays for handle invocations.
+ *
+ * @note
+ * Constructor selection keeps the previous behaviour: the first declared
+ * constructor whose parameters are all annotated with {@link JsonProperty}.
+ */
+final class EntityBindingPlan {
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType CREATE_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private static final ClassValue<EntityBindingPlan> PLANS = new ClassValue<EntityBindingPlan>() {
+        @Override
+        protected EntityBindingPlan computeValue(Class<?> clazz) {
+            return new EntityBindingPlan(clazz);
+        }
+    };
+
+    private final Class<?>            clazz;
+    /** {@code null} if the class has no suitable constructor */
+    private final MethodHandle        creator;
+    private final String[]            jsonKeys;
+    private final boolean[]           optionalParams;
+    private final List<FieldBinding>  updatableFields;
+    /** Property set by each constructor key; unknown keys name the property themselves */
+    private final Map<String, String> propertyByJsonKey = new HashMap<>();
+
+
+    // =======================================================================
+    // Constructor
+    // =======================================================================
+    private EntityBindingPlan(Class<?> clazz) {
+        this.clazz = clazz;
+
+        Constructor<?>      kConstructor = findJsonConstructor(clazz);
+        Map<String, String> jsonNames    = new HashMap<>();
+        if (kConstructor != null) {
+            Parameter[] parameters = kConstructor.getParameters();
+            this.jsonKeys          = new String[parameters.length];
+            this.optionalParams    = new boolean[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                jsonKeys[i]       = parameters[i].getAnnotation(JsonProperty.class).value();
+                optionalParams[i] = parameters[i].getType().equals(Optional.class);
+                /** Parameter names are only known when compiled with -parameters, as Spring Boot builds do */
+                if (parameters[i].isNamePresent()) {
+                    jsonNames.put(parameters[i].getName(), jsonKeys[i]);
+                    propertyByJsonKey.put(jsonKeys[i], parameters[i].getName());
+                }
+            }
+            this.creator = compileCreator(kConstructor);
+        } else {
+            this.jsonKeys       = new String[0];
+            this.optionalParams = new boolean[0];
+            this.creator        = null;
+        }
+
+        this.updatableFields = Collections.unmodifiableList(collectUpdatableFields(clazz, jsonNames));
+    }
+
+
+    /** Returns the cached plan of {@code clazz}, building it on first use. */
+    static EntityBindingPlan of(Class<?> clazz) {
+        return PLANS.get(clazz);
+    }
+
+
+    // =======================================================================
+    // Public
+    // =======================================================================
+    /**
+     * Instantiates the model class from client-sent Json data.
+     *
+     * @param fieldData map whose keys match the {@link JsonProperty} values of the constructor
+     * @throws ReflectiveOperationException if no suitable constructor exists or the constructor fails
+     */
+    @SuppressWarnings("unchecked")
+    <T> T create(Map<String, Object> fieldData) throws ReflectiveOperationException {
+        if (creator == null)
+            throw new NoSuchMethodException("No suitable constructor found for " + clazz.getName());
+
+        Object[] params = new Object[jsonKeys.length];
+        for (int i = 0; i < jsonKeys.length; i++) {
+            Object value = fieldData.get(jsonKeys[i]);
+            params[i]    = optionalParams[i] ? Optional.ofNullable(value) : value;
+        }
+        try {
+            return (T) (Object) creator.invokeExact(params);
+        } catch (ReflectiveOperationException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new ReflectiveOperationException(t);
+        }
+    }
+
+    /** {@link PutUpdatableField} fields of the class and all its superclasses. */
+    List<FieldBinding> getUpdatableFields() {
+        return updatableFields;
+    }
+
+    /** Values of the {@link #getUpdatableFields() updatable fields} of {@code entity}, in order. */
+    Object[] updatableValues(Object entity) {
+        Object[] values = new Object[updatableFields.size()];
+        for (int i = 0; i < values.length; i++) values[i] = updatableFields.get(i).get(entity);
+        return values;
+    }
+
+    /**
+     * Properties the client actually provided for an entity built by 
+     * {@link #create}: the ones whose key is in {@code fieldData}, plus the
+     * updatable fields a specific rule changed after construction.
+     *
+     * @param before {@link #updatableValues} right after {@link #create}
+     */
+    Set<String> sentProperties(Map<String, Object> fieldData, Object[] before, Object entity) {
+        Set<String> sent = new HashSet<>();
+        for (String key : fieldData.keySet()) sent.add(propertyByJsonKey.getOrDefault(key, key));
+        for (int i = 0; i < updatableFields.size(); i++) {
+            FieldBinding field = updatableFields.get(i);
+            if (fieldData.containsKey(field.getJsonName()) || field.get(entity) != before[i]) sent.add(field.getName());
+        }
+        return sent;
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    private static Constructor<?> findJsonConstructor(Class<?> clazz) {
+        for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
+            boolean isAnnotatedProperly = true;
+            for (Parameter parameter : constructor.getParameters()) {
+                if (parameter.getAnnotation(JsonProperty.class) == null) {
+                    isAnnotatedProperly = false;
+                    break;
+                }
+            }
+            if (isAnnotatedProperly) return constructor;
+        }
+        return null;
+    }
+
+    private static MethodHandle compileCreator(Constructor<?> constructor) {
+        try {
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor)
+                    .asSpreader(Object[].class, constructor.getParameterCount())
+                    .asType(CREATE_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot bind constructor of " + constructor.getDeclaringClass().getName(), e);
+        }
+    }
+
+    /**
+     * @param jsonNames key of each constructor parameter by parameter name; 
+     *                  a field takes the key of the parameter named like it
+     */
+    private static List<FieldBinding> collectUpdatableFields(Class<?> clazz, Map<String, String> jsonNames) {
+        List<FieldBinding> bindings = new ArrayList<>();
+        while (clazz != null) {
+            for (Field field : clazz.getDeclaredFields()) { // getDeclaredFields finds fields on current class only
+                PutUpdatableField annotation = field.getAnnotation(PutUpdatableField.class);
+                if (annotation == null) continue; // if not marked as PUT updatable
+                bindings.add(new FieldBinding(field, annotation, jsonName(field, jsonNames)));
+            }
+            clazz = clazz.getSuperclass(); // move to the superclass
+        }
+        return bindings;
+    }
+
+    /** The key of a field in a request body: its own {@link JsonProperty}, its constructor parameter's, or its name. */
+    private static String jsonName(Field field, Map<String, String> jsonNames) {
+        JsonProperty property = field.getAnnotation(JsonProperty.class);
+        if (property != null && !property.value().isEmpty()) return property.value();
+        return jsonNames.getOrDefault(field.getName(), field.getName());
+    }
+
+
+
+
+    /**
+     * Compiled accessor of a single {@link PutUpdatableField} field.
+     */
+    static final class FieldBinding {
+        private final String       name;
+        /** Key of the field in a request body */
+        private final String       jsonName;
+        private final boolean      notNull;
+        private final boolean      encoded;
+        private final MethodHandle getter;
+
+        private FieldBinding(Field field, PutUpdatableField annotation, String jsonName) {
+            this.name     = field.getName();
+            this.jsonName = jsonName;
+            this.notNull  = annotation.notNull();
+            this.encoded  = annotation.encoded();
+            try {
+                field.setAccessible(true);
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot bind field " + field.getDeclaringClass().getName() + "." + name, e);
+            }
+        }
+
+        String  getName()     { return name; }
+        String  getJsonName() { return jsonName; }
+        boolean isNotNull()   { return notNull; }
+        boolean isEncoded()   { return encoded; }
+
+        Object get(Object entity) {
+            try {
+                return (Object) getter.invokeExact(entity);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException(t);
+            }
+        }
+    }
+}
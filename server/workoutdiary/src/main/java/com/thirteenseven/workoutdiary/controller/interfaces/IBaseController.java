@@ -8,10 +8,9 @@ package com.thirteenseven.workoutdiary.controller.interfaces;
 
 import java.io.IOException;
 // ~~~~~~~~ standard ~~~~~~~~
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import lombok.AllArgsConstructor;
@@ -22,26 +21,45 @@ import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 // ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.core.ResolvableType;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.lang.NonNull;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.ReflectionUtils;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
 // ~~~~~~~~ thirteenseven ~~~~~~~~
 import com.thirteenseven.workoutdiary.dao.interfaces.*;
 import com.thirteenseven.workoutdiary.exception.EntityNotFoundException;
 import com.thirteenseven.workoutdiary.model.annotations.PutUpdatableField;
 import com.thirteenseven.workoutdiary.model.base.MongoBaseModel;
+import com.thirteenseven.workoutdiary.model.base.NameBasedModel;
+import com.thirteenseven.workoutdiary.payload.response.BulkWriteResult;
 import com.thirteenseven.workoutdiary.payload.response.DataResponse;
+import com.thirteenseven.workoutdiary.service.BackgroundJobService.Job;
+import com.thirteenseven.workoutdiary.service.ReferenceCatalogService;
 import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
+import com.thirteenseven.workoutdiary.service.base.BaseDocumentService.Revised;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.constraints.NotBlank;
 
 
@@ -52,15 +70,14 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.BufferedReader;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 
-import java.lang.reflect.Constructor;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
-import com.fasterxml.jackson.annotation.JsonProperty;
 
 
 /**
@@ -80,10 +97,31 @@ public interface IBaseController<T extends MongoBaseModel> {
     default PasswordEncoder getEncoder() {
         throw new UnsupportedOperationException("Unimplemented method 'getEncoder'");
     }
-    /** A corresponding service if necessary */
-    default BaseDocumentService getDocumentService() {
-        throw new UnsupportedOperationException("Unimplemented method 'getDocumentService'");
-    };
+    /** 
+     * The service of the model collection. Name lookups, batched writes and
+     * projections of this interface all run through it.
+     */
+    BaseDocumentService getDocumentService();
+    /** 
+     * Cache of the reference collections. Return {@code null} (the default) 
+     * if this controller neither reads nor writes reference data.
+     */
+    default ReferenceCatalogService getReferenceCatalog() {
+        return null;
+    }
+    /** The model class of this controller, resolved from its generic declaration. */
+    @SuppressWarnings("unchecked")
+    default Class<T> getModelClass() {
+        return (Class<T>) GenericTypeResolver.resolveTypeArgument(ClassUtils.getUserClass(getClass()), IBaseController.class);
+    }
+    /** 
+     * Fields which can be read through {@code /queryField} or projected with 
+     * {@code fields=}. Return {@code null} to allow every persisted field of
+     * the model.
+     */
+    default Set<String> getQueryableFields() {
+        return null;
+    }
 
 
     // ==========================================================================
@@ -96,18 +134,34 @@ public interface IBaseController<T extends MongoBaseModel> {
     // ==========================================================================
     /**
      * Get a document via id parameters.
+     * <p>
+     * When a single id is asked for, its current revision is returned in the
+     * {@code ETag} header, to be sent back as {@code If-Match} on 
+     * {@link #updateEntityById}.
      * 
-     * @param id   ID of the document
+     * @param id     ID of the document
+     * @param fields only these fields are read, see {@link #project}
      * @return DataResponse containing the requested document
      * @throws EntityNotFoundException if the ID cannot be found
      */
     @GetMapping(path = "/getByIds", params = "ids")
     @PreAuthorize("hasRole('ADMIN') or hasRole('MODERATOR')")
     default DataResponse<List<T>> getById(
-        @NonNull @RequestParam List<String> ids
+        @NonNull @RequestParam List<String> ids,
+        @RequestParam(required = false) List<String> fields,
+        HttpServletResponse response
     ) throws EntityNotFoundException {
-        List<T> entities = collectEntitiesById(ids);
-        return new DataResponse<>(entities, "Found Id(s)");
+        if (ids.size() == 1) {
+            Long revision = getDocumentService().findRevisions(getModelClass(), ids).get(ids.get(0));
+            if (revision != null) response.setHeader(HttpHeaders.ETAG, "\"" + revision + "\"");
+        }
+        if (fields == null || fields.isEmpty())
+            return new DataResponse<>(collectEntitiesById(ids), "Found Id(s)");
+
+        Query          query = project(new Query(Criteria.where("id").in(ids)), fields);
+        Map<String, T> found = new HashMap<>();
+        getDocumentService().queryOnClass(query, getModelClass()).forEach(entity -> found.put(entity.getId(), entity));
+        return new DataResponse<>(orderByKeys(ids, found), "Found Id(s)");
     }
 
 
@@ -144,49 +198,39 @@ public interface IBaseController<T extends MongoBaseModel> {
 
 
     /**
-     * Retrieve all documents' certain field.
-     * @throws IllegalAccessException 
+     * Retrieve all documents' certain field. The field is read through a 
+     * MongoDB projection (or {@code distinct} command), so documents are never
+     * loaded as entities.
+     * 
+     * @param fieldName property name on the model class
+     * @param distinct  whether to return distinct values only
+     * @param page      page index
+     * @param size      page size
+     * @throws IllegalAccessException if the field cannot be queried on this model
      */
     @GetMapping(path = "/queryField", params = "fieldName")
     @PreAuthorize("hasRole('ADMIN') or hasRole('MODERATOR')")
     default DataResponse<List<Object>> getAllIds(
         @NonNull @RequestParam String   fieldName,
-        @RequestParam boolean           distinct
+        @RequestParam boolean           distinct,
+        @RequestParam(required = false, defaultValue = "0")    int page,
+        @RequestParam(required = false, defaultValue = "1000") int size
     ) throws IllegalAccessException {
         if (fieldName.contains(" "))
             throw new IllegalAccessException("Field name should not contains space");
-        List<T> ls = this.getModelRepo().findAll();
-    
-        String funcName = "get" + fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1);
-    
-        List<Object> values = ls.stream()
-            .map(entity -> {
-                try {
-                    Method getMethod = entity.getClass().getMethod(funcName); // No parameters for standard getters
-                    getMethod.setAccessible(true); // Make the method accessible if it's private/protected
-                    return getMethod.invoke(entity);
-                } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-                    logger.error(e + " Error accessing " + funcName + " in " + entity.getClass().getName());
-                    return null;
-                }
-            }).collect(Collectors.toList());
+        Set<String> queryableFields = getQueryableFields();
+        if (queryableFields != null && !queryableFields.contains(fieldName))
+            throw new IllegalAccessException(fieldName + " cannot be queried on " + getModelClass().getSimpleName());
 
-        if (distinct) {
-            values = new ArrayList<>(new HashSet<>(values));
-        }
+        Slice<Object> values = getDocumentService().findFieldValues(
+            getModelClass(), fieldName, distinct, PageRequest.of(page, size)
+        );
     
-        return new DataResponse<>(values, "Queried Field(s) and called function: " + funcName);
+        return new DataResponse<>(values.getContent(), "Queried Field(s): " + fieldName, values.hasNext());
     }
 
 
 
-
-
-
-
-
-
-
     @GetMapping("/projectWithExclude")
     default <T> DataResponse<List<T>> projectWithExclude(
             @RequestParam String       className,
@@ -240,46 +284,43 @@ public interface IBaseController<T extends MongoBaseModel> {
 
 
     /**
-     * Finds objects by their names in the given repository.
+     * Finds objects by their names in the given repository with a single 
+     * {@code $in} query, or from the {@link ReferenceCatalogService} for 
+     * reference data. The result keeps the order of {@code queryParam}.
      *
-     * @param <T> The type of objects in the repository.
+     * @note
+     * Names are matched exactly, with no typo tolerance: this resolves the
+     * references a write is about to store, and silently taking the closest
+     * name would attach a record to an exercise the client did not pick. 
+     * Clients resolve misspellings beforehand through {@code /exercise/suggest}.
+     *
+     * @param <S> The type of objects in the repository.
      * @param repo The repository to search for the objects.
      * @param queryParam An array of names to search for.
      * @return A list of objects found in the repository.
-     * @throws EntityNotFoundException if strict is true and one or more required named objects are not found.
+     * @throws EntityNotFoundException listing every name which cannot be found.
      */
-    default <S> List<S> findByNameInSpecificRepo(
+    default <S extends NameBasedModel> List<S> findByNameInSpecificRepo(
         INameRepository<S, String> repo,
         String[]                   queryParam
     ) throws EntityNotFoundException {
-        List<S> objects = new ArrayList<>();
-        for (String s : queryParam) {
-            S obj = repo.findByName(s)
-                        .orElseThrow(() -> new EntityNotFoundException(entityNotFoundMsg(s)));
-            if (obj != null) objects.add(obj);
-        }
-        return objects;
+        List<String>            names   = Arrays.asList(queryParam);
+        Class<S>                clazz   = domainClassOf(repo);
+        ReferenceCatalogService catalog = getReferenceCatalog();
+        if (catalog != null && catalog.isCached(clazz))
+            return orderByKeys(names, catalog.byName(clazz));
+
+        Map<String, S> found = new HashMap<>();
+        getDocumentService()
+            .findAllByFieldIn(clazz, "name", names)
+            .forEach(entity -> found.put(entity.getName(), entity));
+        return orderByKeys(names, found);
     }
 
 
 
 
 
-
-    
-
-
-
-
-
-
-
-
-
-
-
-
-
 
     // ==========================================================================
     // put
@@ -290,23 +331,16 @@ public interface IBaseController<T extends MongoBaseModel> {
      * @apiNote
      * The targeted Model class must have that new property set up.
      * 
-     * @return DataResponse containing the list of all documents
+     * @return DataResponse containing the outcome per id and the updated documents
      */
     @PutMapping(path = "/addOrModifyFieldByIds", params = "ids")
     @PreAuthorize("hasRole('ADMIN') or hasRole('MODERATOR')")
-    default DataResponse<List<T>> addOrModifyFieldById(
+    default DataResponse<BulkWriteResult<T>> addOrModifyFieldById(
         @NonNull @RequestParam List<String> ids,
         @NonNull @RequestBody FieldUpdateRequest body
-    ) throws EntityNotFoundException {
-        List<T> entities = collectEntitiesById(ids);
-
-        entities.forEach(entity -> 
-            this.getModelRepo().addOrModifyField(
-                entity, body.getFieldName(), body.getFieldTypeClass(), body.getValue()
-            )
-        );
-
-        return new DataResponse<>(entities, entityAddOrModifiedFieldMsg(ids.toString()));
+    ) {
+        BulkWriteResult<T> result = updateAllByIds(ids, toFieldUpdate(body));
+        return new DataResponse<>(result, entityAddOrModifiedFieldMsg(ids.toString()));
     }
 
 
@@ -315,18 +349,12 @@ public interface IBaseController<T extends MongoBaseModel> {
 
     @PutMapping(path = "/removeFieldByIds", params = {"ids", "fieldName"})
     @PreAuthorize("hasRole('ADMIN')")
-    default DataResponse<List<T>> removeFieldByIds(
+    default DataResponse<BulkWriteResult<T>> removeFieldByIds(
         @NonNull @RequestParam List<String> ids,
         @NonNull @RequestParam String       fieldName
-    ) throws EntityNotFoundException {
-        List<T> entities = collectEntitiesById(ids);
-
-        List<T> abc = entities.stream().map(entity -> {
-            getDocumentService().removeField(entity, fieldName, entity.getClass());
-            return entity;
-        }).collect(Collectors.toList());
-
-        return new DataResponse<>(abc, fieldName + " removed from: " + ids.toString());
+    ) {
+        BulkWriteResult<T> result = updateAllByIds(ids, new Update().unset(fieldName));
+        return new DataResponse<>(result, fieldName + " removed from: " + ids.toString());
     }
 
 
@@ -370,10 +398,17 @@ public interface IBaseController<T extends MongoBaseModel> {
 
     
     /**
-     * Update an entity via id and new data object.
+     * Update an entity via id and new data object. Only the sent fields are 
+     * written, as one {@code $set}/{@code $unset} patch; a field sent as 
+     * {@code null} is removed unless it is {@code notNull}.
+     * <p>
+     * Every update bumps the revision of the document, returned in the 
+     * {@code ETag} header. Send it back as {@code If-Match} and the update is
+     * rejected with 409 if someone else changed the document in between.
      * 
      * @param id ID of the document
      * @param json Object containing the fields to update
+     * @param ifMatch revision the client last saw, optional
      * @return DataResponse containing the updated entity
      * @throws EntityNotFoundException if the ID cannot be found
      * @throws IOException 
@@ -388,36 +423,44 @@ public interface IBaseController<T extends MongoBaseModel> {
     default DataResponse<T> updateEntityById(
         // @PathVariable String id, /** For reference */
         @RequestParam String id,
-        @RequestBody Map<String, Object> json
+        @RequestBody Map<String, Object> json,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+        HttpServletResponse response
     ) throws 
         EntityNotFoundException, IllegalArgumentException, IOException, 
         InstantiationException, IllegalAccessException, InvocationTargetException, 
         NoSuchMethodException, SecurityException 
     {
-        try {
-            T oldEntity = this.getModelRepo().findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(getClass(), entityNotFoundMsg(id)));
-            T newEntity = (T) createEntityFromMap(oldEntity.getClass(), json);
-            
-            updateWithSpecificRule(newEntity, json);
-
-            List<String>  notUpdatedFields = updateEntityFields(oldEntity, newEntity);
-            StringBuilder sb               = new StringBuilder();
-            
-            sb.append("Entity updated.");
-            if (notUpdatedFields.size() > 0) {
-                sb.append(" Unchaged fields: ");
-                sb.append(notUpdatedFields.toString());
-            }
+        Long expectedRevision = parseRevision(ifMatch);
+        T    newEntity        = createEntityFromMap(getModelClass(), json);
+        
+        updateWithSpecificRule(newEntity, json);
 
-            this.getModelRepo().save(oldEntity);
-            return new DataResponse<>(oldEntity, sb.toString());
+        List<String>  notUpdatedFields = new ArrayList<>();
+        Update        patch            = toPatch(newEntity, json, notUpdatedFields);
+        StringBuilder sb               = new StringBuilder();
         
-        } catch (Exception e) { 
-            logger.error("Error occured in " + getClass() + ": " + e.getMessage());
-            e.printStackTrace();
+        sb.append("Entity updated.");
+        if (notUpdatedFields.size() > 0) {
+            sb.append(" Unchaged fields: ");
+            sb.append(notUpdatedFields.toString());
         }
-        return new DataResponse<>(null, entityNotUpdateMsg(id));
+
+        Revised<T> revised;
+        try {
+            revised = getDocumentService().patchById(
+                getModelClass(), id, patch, expectedRevision, needsPreviousOnPatch()
+            );
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        }
+        if (revised == null) throw new EntityNotFoundException(getClass(), entityNotFoundMsg(id));
+        response.setHeader(HttpHeaders.ETAG, "\"" + revised.getRevision() + "\"");
+
+        onEntityPatched(revised.getPrevious(), revised.getEntity());
+
+        onEntitiesWritten();
+        return new DataResponse<>(revised.getEntity(), sb.toString());
     }
 
 
@@ -440,22 +483,20 @@ public interface IBaseController<T extends MongoBaseModel> {
     /**
      * Delete a document by ID.
      * 
-     * @param id   optional ID of the document to delete
-     * @return DataResponse containing the deleted document
-     * @throws EntityNotFoundException if neither the ID nor name can be found
+     * @param ids             IDs of the documents to delete
+     * @param returnDocuments also read the documents before deleting them
+     * @return DataResponse containing the outcome per id and the deleted count
      */
     @DeleteMapping(path = "/deleteByIds", params = "ids")
-    default DataResponse<List<T>> deleteById(
-        @NonNull @RequestParam List<String> ids
-    ) throws EntityNotFoundException {
-
-        List<T> entities = collectEntitiesById(ids);
-
-        ids.forEach(id -> {
-            this.getModelRepo().deleteById(id);
-        });
-        
-        return new DataResponse<>(entities, entityDeletedMsg(ids.toString()));
+    default DataResponse<BulkWriteResult<T>> deleteById(
+        @NonNull @RequestParam List<String> ids,
+        @RequestParam(required = false, defaultValue = "false") boolean returnDocuments
+    ) {
+        BulkWriteResult<T> result = getDocumentService().deleteAllByKeys(
+            getModelClass(), "id", MongoBaseModel::getId, ids, returnDocuments
+        );
+        onEntitiesWritten();
+        return new DataResponse<>(result, entityDeletedMsg(ids.toString()));
     }
 
 
@@ -466,50 +507,64 @@ public interface IBaseController<T extends MongoBaseModel> {
      */
     @DeleteMapping("/deleteAll")
     @PreAuthorize("hasRole('ADMIN')")
-    default DataResponse<Integer> deleteAll() {
-        List<T> recordLs = this.getModelRepo().findAll();
-        this.getModelRepo().deleteAll();
-        return new DataResponse<Integer>(recordLs.size(), entityDeletedMsg("All"));
+    default DataResponse<Long> deleteAll() {
+        long deleted = getDocumentService().deleteAll(getModelClass());
+        onAllEntitiesDeleted();
+        onEntitiesWritten();
+        return new DataResponse<>(deleted, entityDeletedMsg("All"));
+    }
+
+
+    /**
+     * Delete all documents on a background job, in throttled batches. Poll
+     * {@code /api/v1/jobs/{id}} for progress. {@link #onAllEntitiesDeleted()}
+     * runs once the job has emptied the collection, not if it is cancelled
+     * or fails.
+     * 
+     * @param batchSize   documents deleted per round trip
+     * @param pauseMillis pause between two batches
+     * @return DataResponse containing the queued job
+     */
+    @DeleteMapping("/deleteAll/background")
+    @PreAuthorize("hasRole('ADMIN')")
+    default DataResponse<Job> deleteAllInBackground(
+        @RequestParam(required = false, defaultValue = "1000") int  batchSize,
+        @RequestParam(required = false, defaultValue = "100")  long pauseMillis
+    ) {
+        Job job = getDocumentService().deleteAllInBackground(getModelClass(), batchSize, pauseMillis, () -> {
+            onAllEntitiesDeleted();
+            onEntitiesWritten();
+        });
+        onEntitiesWritten();
+        return new DataResponse<>(job, "Deleting all entities in the background.");
     }
 
 
     /**
      * Soft delete a document by ID.
      * 
-     * @param id   optional ID of the document to delete
-     * @return DataResponse containing the deleted document
-     * @throws EntityNotFoundException if neither the ID nor name can be found
+     * @param ids  IDs of the documents to soft delete
+     * @return DataResponse containing the outcome per id and the documents
      */
     @DeleteMapping(path = "/softDeleteByIds", params = "ids")
-    default DataResponse<List<T>> softDeleteById(
+    default DataResponse<BulkWriteResult<T>> softDeleteById(
         @NonNull @RequestParam List<String> ids
-    ) throws EntityNotFoundException {
-        final List<T> entities = collectEntitiesById(ids);
-        entities.clear();
-        ids.forEach(id -> {
-            entities.add(this.getModelRepo().softDeleteById(id));
-        });
-
-        return new DataResponse<>(entities, entitySoftDeleteMsg(ids.toString()));
+    ) {
+        BulkWriteResult<T> result = setSoftDeleted(ids, true);
+        return new DataResponse<>(result, entitySoftDeleteMsg(ids.toString()));
     }
     /**
      * Soft delete a document by ID.
      * 
-     * @param id   optional ID of the document to delete
-     * @return DataResponse containing the deleted document
-     * @throws EntityNotFoundException if neither the ID nor name can be found
+     * @param ids  IDs of the documents to restore
+     * @return DataResponse containing the outcome per id and the documents
      */
     @DeleteMapping(path = "/unsoftDeleteByIds", params = "ids")
-    default DataResponse<List<T>> unsoftDeleteById(
+    default DataResponse<BulkWriteResult<T>> unsoftDeleteById(
         @NonNull @RequestParam List<String> ids
-    ) throws EntityNotFoundException {
-        final List<T> entities = collectEntitiesById(ids);
-        entities.clear();
-        ids.forEach(id -> {
-            entities.add(this.getModelRepo().unsoftDeleteById(id));
-        });
-
-        return new DataResponse<>(entities, entitySoftDeleteMsg(ids.toString()));
+    ) {
+        BulkWriteResult<T> result = setSoftDeleted(ids, false);
+        return new DataResponse<>(result, entitySoftDeleteRestoredMsg(ids.toString()));
     }
 
 
@@ -540,38 +595,136 @@ public interface IBaseController<T extends MongoBaseModel> {
     default String entityAddOrModifiedFieldMsg(String entityIdentifier) { 
         return "Added/Modified field with specified value on entity(s): " + entityIdentifier; 
     };
+    /** 
+     * Called after every write through the generic endpoints. Drops the 
+     * cached reference data of this model by default; override it to drop 
+     * other caches derived from this model.
+     */
+    default void onEntitiesWritten() {
+        ReferenceCatalogService catalog = getReferenceCatalog();
+        if (catalog != null) catalog.invalidate(getModelClass());
+    }
+    /** Called once every document of the model has been deleted, e.g. to drop derived data. */
+    default void onAllEntitiesDeleted() {}
+    /**
+     * Whether {@link #updateEntityById} reads the document as it was right 
+     * before the patch, for {@link #onEntityPatched}. Off by default: it 
+     * costs one more read per patch.
+     */
+    default boolean needsPreviousOnPatch() {
+        return false;
+    }
+    /**
+     * Called after {@link #updateEntityById} patched a document.
+     * 
+     * @param before the document right before this patch; {@code null} unless
+     *               {@link #needsPreviousOnPatch()} is on
+     * @param after  the document as this patch left it
+     */
+    default void onEntityPatched(T before, T after) {}
+    /**
+     * Applies one update to all documents of {@code ids} as a single batched
+     * write, then calls {@link #onEntitiesWritten()}.
+     */
+    default BulkWriteResult<T> updateAllByIds(List<String> ids, Update update) {
+        BulkWriteResult<T> result = getDocumentService().updateAllByKeys(
+            getModelClass(), "id", MongoBaseModel::getId, ids, update, true
+        );
+        onEntitiesWritten();
+        return result;
+    }
     /**
-     * Used the provided repo to locate all entities with related IDs
+     * Sets the soft-delete flag of {@code ids} as one batched write when the
+     * model maps the flag (see {@link BaseDocumentService#softDeletedField});
+     * otherwise through the repository, one id at a time. Then calls 
+     * {@link #onEntitiesWritten()}.
+     */
+    default BulkWriteResult<T> setSoftDeleted(List<String> ids, boolean deleted) {
+        BulkWriteResult<T> result;
+        if (getDocumentService().softDeletedField(getModelClass()).isPresent()) {
+            result = getDocumentService().softDeleteAllByIds(getModelClass(), ids, deleted);
+        } else {
+            Map<String, BulkWriteResult.Outcome> outcomes  = new LinkedHashMap<>();
+            List<T>                              documents = new ArrayList<>();
+            for (String id : ids) {
+                T entity = deleted ? getModelRepo().softDeleteById(id) : getModelRepo().unsoftDeleteById(id);
+                outcomes.put(id, entity == null ? BulkWriteResult.Outcome.NOT_FOUND : BulkWriteResult.Outcome.APPLIED);
+                if (entity != null) documents.add(entity);
+            }
+            result = new BulkWriteResult<>(outcomes, documents.size(), documents.size(), documents);
+        }
+        onEntitiesWritten();
+        return result;
+    }
+    /** {@code $set} of the field sent by the client, converted to the requested type. */
+    default Update toFieldUpdate(FieldUpdateRequest body) {
+        Object value = getDocumentService().convertFieldValue(body.getValue(), body.getFieldTypeClass());
+        return new Update().set(body.getFieldName(), value);
+    }
+    /**
+     * Used the provided repo to locate all entities with related IDs in a 
+     * single {@code $in} query. The result keeps the order of {@code ids}.
+     * 
      * @param ids List of _id in MongoDB
+     * @throws EntityNotFoundException listing every ID which cannot be found
+     */
+    default List<T> collectEntitiesById(List<String> ids) throws EntityNotFoundException {
+        Map<String, T> found = new HashMap<>();
+        this.getModelRepo().findAllById(ids).forEach(entity -> found.put(entity.getId(), entity));
+        return orderByKeys(ids, found);
+    }
+    /**
+     * Restricts a read to the fields a client asked for, as a Mongo field 
+     * projection: the other fields are never read nor sent, and references
+     * left out are not loaded at all. {@code _id} is always returned; 
+     * properties not read are {@code null} in the response.
+     * 
+     * @param fields property names of the model, or dotted paths into them
+     *               (e.g. {@code sets.repetitions}); {@code null} or empty 
+     *               leaves the query as it is
+     * @throws IllegalArgumentException if a field is not persisted on the 
+     *         model or not in {@link #getQueryableFields()}
+     */
+    default Query project(Query query, List<String> fields) {
+        if (fields == null || fields.isEmpty()) return query;
+        Set<String> queryableFields = getQueryableFields();
+        for (String field : fields) {
+            String property = field.split("\\.", 2)[0];
+            if (queryableFields != null && !queryableFields.contains(property))
+                throw new IllegalArgumentException(property + " cannot be read on " + getModelClass().getSimpleName());
+            getDocumentService().resolveFieldName(getModelClass(), property);
+            query.fields().include(field);
+        }
+        return query;
+    }
+    /**
+     * Lines up looked-up entities with the keys the caller asked for.
+     * 
+     * @param keys  requested keys, in the caller's order
+     * @param found entities found by the lookup, by key
+     * @throws EntityNotFoundException listing every key missing from {@code found}
      */
-    default List<T> collectEntitiesById(List<String> ids) {
-        return ids.stream()
-                .map(id -> {
-                    try {
-                        return this.getModelRepo().findById(id)
-                                .orElseThrow(() -> new EntityNotFoundException(entityNotFoundMsg(id)));
-                    } catch (EntityNotFoundException e) {
-                        /**
-                         * It is an unchecked exception, meaning it doesn't need to
-                         * be declared in the method signature or explicitly caught,
-                         * making it convenient for use in lambda expressions where
-                         * checked exceptions are not allowed.
-                         */
-                        throw new IllegalStateException(e); // Wrap the checked exception
-                    }
-                })
-                .collect(Collectors.toList());
+    default <S> List<S> orderByKeys(
+        List<String>   keys, 
+        Map<String, S> found
+    ) throws EntityNotFoundException {
+        List<S>      entities = new ArrayList<>(keys.size());
+        List<String> missing  = new ArrayList<>();
+        for (String key : keys) {
+            S entity = found.get(key);
+            if (entity == null) missing.add(key);
+            else                entities.add(entity);
+        }
+        if (!missing.isEmpty())
+            throw new EntityNotFoundException(entityNotFoundMsg(missing.toString()));
+        return entities;
     }
     
-
-
-
-
-
-
-
-
-
+    /** Resolves the model class served by a Spring Data repository (proxy). */
+    @SuppressWarnings("unchecked")
+    private static <S> Class<S> domainClassOf(INameRepository<S, String> repo) {
+        return (Class<S>) ResolvableType.forClass(repo.getClass()).as(INameRepository.class).resolveGeneric(0);
+    }
 
 
 
@@ -579,14 +732,14 @@ public interface IBaseController<T extends MongoBaseModel> {
      * Checks if a new value is invalid based on annotation constraints.
      *
      * @param newValue the new value to check
-     * @param annotation the annotation specifying the constraints
+     * @param notNull  {@link PutUpdatableField#notNull()} of the field
      * @return true if the value is invalid, false otherwise
      */
     private boolean isInvalid(
-        Object            newValue, 
-        PutUpdatableField annotation
+        Object  newValue, 
+        boolean notNull
     ) {
-        if (annotation.notNull()) {
+        if (notNull) {
             if (newValue == null) return true;
             if (newValue instanceof String && ((String) newValue).trim().isEmpty()) return true;
         }
@@ -594,110 +747,67 @@ public interface IBaseController<T extends MongoBaseModel> {
     }
     /**
      * Instantiates an object of the specified class using a map of field data.
-     * This method finds a constructor in the given class that is annotated 
-     * specifically for this purpose and uses the provided field data to 
-     * instantiate the object via reflection.
+     * The annotated constructor is resolved once per class and cached in an
+     * {@link EntityBindingPlan}.
      *
      * @param <T> the type of the object to create
      * @param clazz the Class object corresponding to the class of T
      * @param fieldData a map containing field names and their corresponding values to be used for creating the object
      * @return an instance of T, constructed using the provided field data
-     * @throws ReflectiveOperationException if any reflection-based operations (such as finding constructors or instantiating the class) fail
+     * @throws ReflectiveOperationException if no suitable constructor exists or instantiating the class fails
      */
     private <T> T createEntityFromMap(
         Class<T>            clazz,
         Map<String, Object> fieldData
     ) throws ReflectiveOperationException {
-        Constructor<T> kConstructor = null;
-
-        System.out.println(fieldData.toString());
-        for (Constructor<?> constructor : clazz.getDeclaredConstructors()) {
-            boolean isAnnotatedProperly = true;
-            for (java.lang.reflect.Parameter parameter : constructor.getParameters()) {
-                if (parameter.getAnnotation(JsonProperty.class) == null) {
-                    isAnnotatedProperly = false;
-                    break;
-                }
-            }
-            if (isAnnotatedProperly) {
-                kConstructor = (Constructor<T>) constructor;
-                return instantiateUsingConstructor(kConstructor, fieldData);
-            }
-        }
-        throw new NoSuchMethodException("No suitable constructor found for " + clazz.getName());
+        return EntityBindingPlan.of(clazz).create(fieldData);
     }
     /**
-     * Creates an instance of a class using a specific constructor and a map of 
-     * field data. This method constructs an object by dynamically matching 
-     * constructor parameters with provided field data based on annotations.
-     * 
-     * @note
-     * Each parameter in the constructor is expected to be annotated with 
-     * {@link JsonProperty} to indicate the corresponding key in the field data 
-     * map. The method handles the creation of {@link Optional} types if the 
-     * constructor expects them.
+     * Translates the {@link PutUpdatableField} fields of the temporary entity
+     * into a patch: set values become {@code $set}, fields sent as 
+     * {@code null} become {@code $unset}, fields not sent are left alone. 
+     * Fields set by {@link #updateWithSpecificRule} are picked up as well.
      *
-     * @param <T> the type of the object to be instantiated
-     * @param constructor the constructor of the class T to be used for instantiation
-     * @param fieldData a map containing the data for fields, where each key corresponds to the value specified in the {@link JsonProperty} annotation of constructor parameters
-     * @return an instance of T created using the provided constructor and field data
-     * @throws ReflectiveOperationException if any reflection operations, like accessing the constructor or instantiating the class, fail
-     */
-    private <T> T instantiateUsingConstructor(Constructor<T> constructor, Map<String, Object> fieldData) throws ReflectiveOperationException {
-        Object[] params = new Object[constructor.getParameterCount()];
-        int i = 0;
-        for (java.lang.reflect.Parameter parameter : constructor.getParameters()) {
-            JsonProperty annotation = parameter.getAnnotation(JsonProperty.class);
-            Object value = fieldData.get(annotation.value());
-            if (parameter.getType().equals(Optional.class)) {
-                params[i++] = Optional.ofNullable(value);
-            } else {
-                params[i++] = value;
-            }
-        }
-        return constructor.newInstance(params);
-        
-    }
-    /**
-     * By default, this method will be able to handle the fields with correct 
-     * constructor provided in model classes. But it cannot handle fields which
-     * requires referencing another repository.
+     * @param notUpdatedFields collects the fields rejected by {@code notNull}
      */
-    private List<String> updateEntityFields(
-        T oldEntity, 
-        T newEntity
+    private Update toPatch(
+        T                   newEntity,
+        Map<String, Object> json,
+        List<String>        notUpdatedFields
     ) {
-        List<String> notUpdatedFields = new ArrayList<>();
-        Class<?> clazz = newEntity.getClass();
-    
-        while (clazz != null) {
-            for (Field field : clazz.getDeclaredFields()) { // getDeclaredFields finds functions on current class only
-                field.setAccessible(true);
-                PutUpdatableField annotation = field.getAnnotation(PutUpdatableField.class);
-                if (annotation == null) continue; // if not marked as PUT updatable
-    
-                try {
-                    Object newValue = field.get(newEntity);
-    
-                    if (isInvalid(newValue, annotation)) {
-                        notUpdatedFields.add(field.getName());
-                        continue;
-                    }
-    
-                    if (newValue != null) {
-                        if (newValue instanceof String && annotation.encoded()) {
-                            field.set(oldEntity, getEncoder().encode((String) newValue));
-                        } else {
-                            field.set(oldEntity, newValue);
-                        }
-                    }
-                } catch (IllegalAccessException e) {
-                    e.printStackTrace();
+        Update patch = new Update();
+
+        for (EntityBindingPlan.FieldBinding field : EntityBindingPlan.of(newEntity.getClass()).getUpdatableFields()) {
+            Object newValue = field.get(newEntity);
+
+            if (isInvalid(newValue, field.isNotNull())) {
+                if (json.containsKey(field.getJsonName())) notUpdatedFields.add(field.getJsonName());
+                continue;
+            }
+
+            if (newValue != null) {
+                if (newValue instanceof String && field.isEncoded()) {
+                    patch.set(field.getName(), getEncoder().encode((String) newValue));
+                } else {
+                    patch.set(field.getName(), newValue);
                 }
+            } else if (json.containsKey(field.getJsonName())) {
+                patch.unset(field.getName());
             }
-            clazz = clazz.getSuperclass(); // move to the superclass
         }
-        return notUpdatedFields;
+        return patch;
+    }
+    /** Revision from an {@code If-Match} header ({@code "3"}, {@code W/"3"} or {@code 3}). */
+    private static Long parseRevision(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.strip().equals("*")) return null;
+        String value = ifMatch.strip();
+        if (value.startsWith("W/")) value = value.substring(2);
+        value = value.replace("\"", "");
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed If-Match: " + ifMatch);
+        }
     }
 
 
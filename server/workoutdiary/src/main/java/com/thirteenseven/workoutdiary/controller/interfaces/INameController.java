@@ -7,12 +7,17 @@
 package com.thirteenseven.workoutdiary.controller.interfaces;
 
 // ~~~~~~~~ standard ~~~~~~~~
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 // ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -26,7 +31,15 @@ import com.thirteenseven.workoutdiary.dao.interfaces.INameRepository;
 import com.thirteenseven.workoutdiary.exception.EntityNotFoundException;
 import com.thirteenseven.workoutdiary.model.base.MongoBaseModel;
 import com.thirteenseven.workoutdiary.model.base.NameBasedModel;
+import com.thirteenseven.workoutdiary.payload.response.BulkWriteResult;
 import com.thirteenseven.workoutdiary.payload.response.DataResponse;
+import com.thirteenseven.workoutdiary.payload.response.ItemResult;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 
 
@@ -35,6 +48,9 @@ import com.thirteenseven.workoutdiary.payload.response.DataResponse;
  * Name-related interface for REST API
  */
 public interface INameController<T extends NameBasedModel> extends IBaseController<T> {
+
+    static final ObjectMapper                       NDJSON_MAPPER = new ObjectMapper();
+    static final TypeReference<Map<String, Object>> NDJSON_ITEM   = new TypeReference<>() {};
     
     /**
      * Override the main model repository in a RestController with this 
@@ -60,17 +76,79 @@ public interface INameController<T extends NameBasedModel> extends IBaseControll
         @RequestBody(required = true) Map<String, List<String>> json
 
     ) throws EntityNotFoundException {
+        List<T> candidates = new ArrayList<>();
+        for (String name : new LinkedHashSet<>(json.getOrDefault("names", new ArrayList<>()))) {
+            candidates.add(newEntityByName(name));
+        }
+        /** One unordered insertMany; names which already exist are skipped */
+        List<ItemResult> results = getDocumentService().upsertAllByKey(
+            getModelClass(), "name", NameBasedModel::getName, candidates, true
+        );
         List<T> entities = new ArrayList<>();
-        for (String name : json.getOrDefault("names", new ArrayList<>())) {
-            T newEntity = newEntityByName(name);
-            this.getModelRepo().save(newEntity);
-            entities.add(newEntity);
+        for (ItemResult result : results) {
+            if (result.getOutcome() == ItemResult.Outcome.INSERTED) entities.add(candidates.get(result.getIndex()));
         }
+        onEntitiesWritten();
         return entities.size() > 0 ? 
             new DataResponse<>(entities, "Added entity(s).") : 
             new DataResponse<>(entities, "Nothing is added.");
     }
 
+
+    /**
+     * Bulk create or update entities from a JSON array. Entities are keyed on
+     * their name: existing ones are updated in place, new ones inserted, in 
+     * unordered bulks of {@link BulkUpsertSession#CHUNK_SIZE}.
+     * 
+     * @param items      entities, with the same fields as {@code updateById}
+     * @param insertOnly report existing names as duplicates instead of updating them
+     * @return DataResponse containing the outcome of every item, in order
+     */
+    @PostMapping(path = "/bulkUpsert", consumes = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MODERATOR')")
+    default DataResponse<List<ItemResult>> bulkUpsert(
+        @RequestBody List<Map<String, Object>> items,
+        @RequestParam(required = false, defaultValue = "false") boolean insertOnly
+    ) {
+        BulkUpsertSession<T> session = new BulkUpsertSession<>(this, insertOnly);
+        items.forEach(session::add);
+        return bulkUpsertResponse(session.finish());
+    }
+
+
+    /**
+     * Same as {@link #bulkUpsert} for an NDJSON stream (one entity per line),
+     * read line by line so large catalogs never sit in memory at once. A line
+     * which is not valid JSON fails on its own.
+     */
+    @PostMapping(path = "/bulkUpsert", consumes = "application/x-ndjson")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('MODERATOR')")
+    default DataResponse<List<ItemResult>> bulkUpsertNdjson(
+        HttpServletRequest request,
+        @RequestParam(required = false, defaultValue = "false") boolean insertOnly
+    ) throws IOException {
+        BulkUpsertSession<T> session = new BulkUpsertSession<>(this, insertOnly);
+        try (BufferedReader reader = request.getReader()) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                try {
+                    session.add(NDJSON_MAPPER.readValue(line, NDJSON_ITEM));
+                } catch (JsonProcessingException e) {
+                    session.addUnreadable("Invalid JSON: " + e.getOriginalMessage());
+                }
+            }
+        }
+        return bulkUpsertResponse(session.finish());
+    }
+
+    private DataResponse<List<ItemResult>> bulkUpsertResponse(List<ItemResult> results) {
+        onEntitiesWritten();
+        Map<ItemResult.Outcome, Integer> counts = new EnumMap<>(ItemResult.Outcome.class);
+        results.forEach(result -> counts.merge(result.getOutcome(), 1, Integer::sum));
+        return new DataResponse<>(results, "Bulk upsert: " + counts);
+    }
+
     /** This method should be override by child class if we want to use the funtion. */
     default T newEntityByName(String name) {
         throw new UnsupportedOperationException("Unsupported model type for name-based creation.");
@@ -107,23 +185,19 @@ public interface INameController<T extends NameBasedModel> extends IBaseControll
      * @apiNote
      * The targeted Model class must have that new property set up.
      * 
-     * @return DataResponse containing the list of all documents
+     * @return DataResponse containing the outcome per name and the updated documents
      */
     @PutMapping(path = "/addOrModifyFieldByNames", params = "names")
     @PreAuthorize("hasRole('ADMIN') or hasRole('MODERATOR')")
-    default DataResponse<List<T>> addOrModifyFieldByNames(
+    default DataResponse<BulkWriteResult<T>> addOrModifyFieldByNames(
         @RequestParam   List<String>       names,
         @RequestBody    FieldUpdateRequest body
-    ) throws EntityNotFoundException {
-        List<T> entities = collectEntitiesByNames(names);
-
-        entities.forEach(entity -> 
-            this.getModelRepo().addOrModifyField(
-                entity, body.getFieldName(), body.getFieldTypeClass(), body.getValue()
-            )
+    ) {
+        BulkWriteResult<T> result = getDocumentService().updateAllByKeys(
+            getModelClass(), "name", NameBasedModel::getName, names, toFieldUpdate(body), true
         );
-
-        return new DataResponse<>(entities, entityAddOrModifiedFieldMsg(names.toString()));
+        onEntitiesWritten();
+        return new DataResponse<>(result, entityAddOrModifiedFieldMsg(names.toString()));
     }
 
     
@@ -135,22 +209,20 @@ public interface INameController<T extends NameBasedModel> extends IBaseControll
     /**
      * Delete a document name.
      * 
-     * @param name optional name of the document to delete
-     * @return DataResponse containing the deleted document
-     * @throws EntityNotFoundException if neither the ID nor name can be found
+     * @param names           names of the documents to delete
+     * @param returnDocuments also read the documents before deleting them
+     * @return DataResponse containing the outcome per name and the deleted count
      */
     @DeleteMapping(path = "/deleteByNames", params = "names")
-    default DataResponse<List<T>> deleteByNames(
-        @RequestParam List<String> names
-    ) throws EntityNotFoundException {
-                
-        List<T> entities = collectEntitiesByNames(names);
-
-        entities.forEach(entity -> {
-            this.getModelRepo().delete(entity);
-        });
-
-        return new DataResponse<>(entities, "Deleted entities by name(s).");
+    default DataResponse<BulkWriteResult<T>> deleteByNames(
+        @RequestParam List<String> names,
+        @RequestParam(required = false, defaultValue = "false") boolean returnDocuments
+    ) {
+        BulkWriteResult<T> result = getDocumentService().deleteAllByKeys(
+            getModelClass(), "name", NameBasedModel::getName, names, returnDocuments
+        );
+        onEntitiesWritten();
+        return new DataResponse<>(result, "Deleted entities by name(s).");
     }
 
 
@@ -163,23 +235,15 @@ public interface INameController<T extends NameBasedModel> extends IBaseControll
     // =========================================================================
     // Utility
     // =========================================================================
-    default List<T> collectEntitiesByNames(List<String> names) {
-        return names.stream()
-            .map(name -> {
-                try {
-                    return this.getModelRepo().findByName(name)
-                               .orElseThrow(() -> new EntityNotFoundException(entityNotFoundMsg(name)));
-                } catch (EntityNotFoundException e) {
-                    /**
-                     * It is an unchecked exception, meaning it doesn't need to 
-                     * be declared in the method signature or explicitly caught, 
-                     * making it convenient for use in lambda expressions where 
-                     * checked exceptions are not allowed.
-                     */
-                    throw new IllegalStateException(e); // Wrap the checked exception
-                }
-            })
-            .collect(Collectors.toList());
+    /**
+     * Locate all entities with related names in a single {@code $in} query.
+     * The result keeps the order of {@code names}.
+     * 
+     * @param names names of the entities
+     * @throws EntityNotFoundException listing every name which cannot be found
+     */
+    default List<T> collectEntitiesByNames(List<String> names) throws EntityNotFoundException {
+        return findByNameInSpecificRepo(getModelRepo(), names.toArray(new String[0]));
     }
 
 }
\ No newline at end of file
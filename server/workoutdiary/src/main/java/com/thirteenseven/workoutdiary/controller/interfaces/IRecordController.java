@@ -5,9 +5,10 @@ package com.thirteenseven.workoutdiary.controller.interfaces;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 // ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -51,16 +52,17 @@ extends
     /**
      * Get a record document based on specific users.
      * 
-     * @param users usernames
+     * @param users  usernames
+     * @param fields only these fields are read, see {@link #project}
      * @return DataResponse containing the requested document
      * @throws EntityNotFoundException if the name cannot be found
      */
     @GetMapping(path = "/getByUsernames", params = "usernames")
     default DataResponse<List<List<T>>> getByNames(
-        @RequestParam List<String> usernames
-
+        @RequestParam List<String> usernames,
+        @RequestParam(required = false) List<String> fields
     ) throws EntityNotFoundException {
-        List<List<T>> entities = collectEntitiesByUsers(usernames);
+        List<List<T>> entities = collectEntitiesByUsers(usernames, fields);
         return new DataResponse<>(entities, "Found entity(s).");
     }
 
@@ -68,24 +70,21 @@ extends
     // =========================================================================
     // Utility
     // =========================================================================
-    default List<List<T>> collectEntitiesByUsers(List<String> names) {
-        return names.stream()
-            .map(name -> {
-                try {
-                    User usr = this.getUserRepo().findByName(name)
-                               .orElseThrow(() -> new EntityNotFoundException(entityNotFoundMsg(name)));
-                    List<T> entity = getModelRepo().findByUser(usr);
-                    return entity;
-                } catch (EntityNotFoundException e) {
-                    /**
-                     * It is an unchecked exception, meaning it doesn't need to 
-                     * be declared in the method signature or explicitly caught, 
-                     * making it convenient for use in lambda expressions where 
-                     * checked exceptions are not allowed.
-                     */
-                    throw new IllegalStateException(e); // Wrap the checked exception
-                }
-            })
-            .collect(Collectors.toList());
+    /**
+     * Records of every user, in the order of {@code names}. The users are 
+     * looked up in one {@code $in} query, and every user's records go 
+     * through the document service, which loads their references in batch.
+     * 
+     * @param fields projection of the records, {@code null} for all fields
+     * @throws EntityNotFoundException listing every name which cannot be found
+     */
+    default List<List<T>> collectEntitiesByUsers(List<String> names, List<String> fields) throws EntityNotFoundException {
+        List<User>    users    = findByNameInSpecificRepo(getUserRepo(), names.toArray(new String[0]));
+        List<List<T>> entities = new ArrayList<>(users.size());
+        for (User usr : users) {
+            Query query = project(new Query(Criteria.where("user").is(usr)), fields);
+            entities.add(getDocumentService().queryOnClass(query, getModelClass()));
+        }
+        return entities;
     }
 }
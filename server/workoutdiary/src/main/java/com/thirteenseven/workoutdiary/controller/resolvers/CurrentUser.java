@@ -0,0 +1,25 @@
+package com.thirteenseven.workoutdiary.controller.resolvers;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.thirteenseven.workoutdiary.model.User;
+
+
+/**
+ * Injects the authenticated {@link User} into a controller method parameter.
+ * The user is loaded once per request by the auth filter, so controllers
+ * don't need to look it up again.
+ * 
+ * @see CurrentUserArgumentResolver
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CurrentUser {
+    /** Whether the request fails if there is no authenticated user. */
+    boolean required() default true;
+}
@@ -0,0 +1,76 @@
+package com.thirteenseven.workoutdiary.controller.resolvers;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.Arrays;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.dao.UserRepository;
+import com.thirteenseven.workoutdiary.exception.EntityNotFoundException;
+import com.thirteenseven.workoutdiary.model.User;
+import com.thirteenseven.workoutdiary.utilities.Constants;
+
+
+/**
+ * Resolves {@link CurrentUser} parameters from the request attribute set by 
+ * the auth filter ({@link #ATTRIBUTE}).
+ * 
+ * @note
+ * When security is disabled the filter does not run; the user is then looked
+ * up from the {@code username} cookie, as the controllers used to do.
+ */
+@Component
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+    /** Request attribute holding the authenticated {@link User}. */
+    public static final String ATTRIBUTE = CurrentUserArgumentResolver.class.getName() + ".user";
+
+    @Autowired
+    private UserRepository userRepository;
+
+
+    @Override
+    public boolean supportsParameter(@NonNull MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(CurrentUser.class)
+            && User.class.isAssignableFrom(parameter.getParameterType());
+    }
+
+    @Override
+    public Object resolveArgument(
+        @NonNull MethodParameter       parameter,
+        ModelAndViewContainer          mavContainer,
+        @NonNull NativeWebRequest      webRequest,
+        WebDataBinderFactory           binderFactory
+    ) throws EntityNotFoundException {
+        HttpServletRequest request = webRequest.getNativeRequest(HttpServletRequest.class);
+        User               user    = request == null ? null : (User) request.getAttribute(ATTRIBUTE);
+
+        if (user == null && request != null && request.getCookies() != null) {
+            String username = Arrays.stream(request.getCookies())
+                .filter(c -> c.getName().equals(Constants.Cookies.getUsername()))
+                .map(Cookie::getValue)
+                .findFirst()
+                .orElse(null);
+            if (username != null) {
+                user = userRepository.findByName(username).orElse(null);
+                request.setAttribute(ATTRIBUTE, user);
+            }
+        }
+
+        if (user == null && parameter.getParameterAnnotation(CurrentUser.class).required())
+            throw new EntityNotFoundException("Current user not found.");
+        return user;
+    }
+}
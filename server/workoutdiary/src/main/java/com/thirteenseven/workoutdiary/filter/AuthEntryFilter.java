@@ -32,10 +32,14 @@ import org.springframework.security.web.authentication.WebAuthenticationDetailsS
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 // ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.controller.resolvers.CurrentUserArgumentResolver;
+import com.thirteenseven.workoutdiary.dao.UserRepository;
 import com.thirteenseven.workoutdiary.exception.CookieHeaderMismatchException;
 import com.thirteenseven.workoutdiary.exception.InvalidJwtException;
+import com.thirteenseven.workoutdiary.model.User;
 import com.thirteenseven.workoutdiary.payload.response.FilterResponse;
-import com.thirteenseven.workoutdiary.service.MUserDetailsService;
+import com.thirteenseven.workoutdiary.service.AuthTokenCacheService;
+import com.thirteenseven.workoutdiary.service.MUserDetails;
 import com.thirteenseven.workoutdiary.utilities.Constants;
 import com.thirteenseven.workoutdiary.utilities.JwtUtility;
 import com.thirteenseven.workoutdiary.config.WebSecurityConfig;
@@ -70,7 +74,9 @@ public class AuthEntryFilter extends OncePerRequestFilter {
     @Autowired
     private JwtUtility            jwtUtils;
     @Autowired
-    private MUserDetailsService   userDetailsService;
+    private AuthTokenCacheService authTokenCache;
+    @Autowired
+    private UserRepository        userRepository;
 
     // ===========================================================
     // Overridden Functions
@@ -101,11 +107,31 @@ public class AuthEntryFilter extends OncePerRequestFilter {
             if (isJwtMissing(clientJWT, request.getRequestURI()) ) 
                 throw new InvalidJwtException("JSON Web Token is not found.");
                 
-            if (clientJWT != null && jwtUtils.validateJwtToken(clientJWT)) {
-                String      tokenEmail  = jwtUtils.decipher(clientJWT)[0];
-                verifyCookieEmailMatchesToken(request, tokenEmail);
-                UserDetails userDetails = userDetailsService.loadUserByUsername(tokenEmail);
-                setAuthenticationContext(request, userDetails);   
+            if (clientJWT != null) {
+                long                        start    = System.nanoTime();
+                AuthTokenCacheService.Entry verified = authTokenCache.get(clientJWT);
+
+                if (verified != null) {
+                    /** Token verified before: no crypto, no user lookup */
+                    verifyCookieEmailMatchesToken(request, clientJWT, verified.getEmail());
+                    setAuthenticationContext(request, verified.getUserDetails());
+                    request.setAttribute(CurrentUserArgumentResolver.ATTRIBUTE, verified.getUser());
+
+                } else if (jwtUtils.validateJwtToken(clientJWT)) {
+                    String tokenEmail = jwtUtils.decipher(clientJWT)[0];
+                    verifyCookieEmailMatchesToken(request, clientJWT, tokenEmail);
+                    /** Read before the lookup: an eviction meanwhile keeps this load out of the cache */
+                    long generation = authTokenCache.generation();
+                    /** The only user lookup; the UserDetails are built from it and @CurrentUser gets it too */
+                    User user = userRepository.findByEmail(tokenEmail)
+                        .orElseThrow(() -> new InvalidJwtException("The user of this token no longer exists."));
+                    UserDetails                 userDetails = toUserDetails(user);
+                    AuthTokenCacheService.Entry cached      = authTokenCache.put(clientJWT, tokenEmail, userDetails, user, generation);
+                    setAuthenticationContext(request, userDetails);
+                    /** Once cached the instance is shared; the request gets its own copy like a cache hit does */
+                    request.setAttribute(CurrentUserArgumentResolver.ATTRIBUTE, cached != null ? cached.getUser() : user);
+                }
+                authTokenCache.recordAuthLatency(System.nanoTime() - start);
             }
 
             chain.doFilter(request, response);
@@ -143,11 +169,13 @@ public class AuthEntryFilter extends OncePerRequestFilter {
      * Verifies that the email in the JWT token matches the email in the cookie.
      * 
      * @param request                        HTTP request object.
-     * @param correctTokenEmail                     Email extracted from the JWT token.
+     * @param headerJWT                      JWT from the header.
+     * @param correctTokenEmail              Email extracted from the JWT token.
      * @throws CookieHeaderMismatchException If the email does not match.
      */
     private void verifyCookieEmailMatchesToken(
         HttpServletRequest request,
+        String             headerJWT,
         String             correctTokenEmail
     ) throws CookieHeaderMismatchException {
         Cookie[] cookies = request.getCookies();
@@ -163,7 +191,11 @@ public class AuthEntryFilter extends OncePerRequestFilter {
                 .filter(c ->  c.getName().equals(Constants.Cookies.getToken()))
                 .findFirst();
         if (tokenCookie.isPresent()) {
-            String _tokenEmail = jwtUtils.decipher(tokenCookie.get().getValue())[0];
+            String cookieJWT = tokenCookie.get().getValue();
+            /** Usually the very same token; only decipher when it differs */
+            if (cookieJWT.equals(headerJWT)) return;
+            AuthTokenCacheService.Entry cached = authTokenCache.get(cookieJWT);
+            String _tokenEmail = cached != null ? cached.getEmail() : jwtUtils.decipher(cookieJWT)[0];
 
             if (!_tokenEmail.equals(correctTokenEmail)) {
                 logger.error("Mismatched Jwt (cookie email and header email)");
@@ -177,6 +209,17 @@ public class AuthEntryFilter extends OncePerRequestFilter {
     }
 
 
+    /**
+     * Principal of a token-authenticated request, built by the same 
+     * {@link MUserDetails#build} that {@code MUserDetailsService} uses, so 
+     * its type and username are the ones a login produces; only the second 
+     * user lookup is saved.
+     */
+    private UserDetails toUserDetails(User user) {
+        return MUserDetails.build(user);
+    }
+
+
     /**
      * Sets the authentication context using the provided user details.
      * 
@@ -0,0 +1,157 @@
+package com.thirteenseven.workoutdiary.filter;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.controller.resolvers.CurrentUserArgumentResolver;
+import com.thirteenseven.workoutdiary.model.User;
+import com.thirteenseven.workoutdiary.service.IdempotencyService;
+import com.thirteenseven.workoutdiary.service.IdempotencyService.State;
+import com.thirteenseven.workoutdiary.service.IdempotencyService.Stored;
+
+/**
+ * Makes the create endpoints it is registered on safe to retry. A POST with
+ * an {@value #HEADER} header runs once per user and key; a retry gets the
+ * stored status and body of the first response, marked with
+ * {@value #REPLAYED_HEADER}, and writes nothing.
+ * <ul>
+ * <li>A retry while the first request is still running gets 409.</li>
+ * <li>The same key with a different body gets 422.</li>
+ * <li>Failed requests (not 2xx) are not stored, so they can be retried.</li>
+ * </ul>
+ * Runs after the security chain, which has resolved the current user.
+ */
+@Component
+public class IdempotencyFilter implements Filter {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyFilter.class);
+
+    public static final String HEADER          = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    /** Longest key accepted; clients usually send a UUID */
+    private static final int   MAX_KEY_LENGTH  = 255;
+
+    @Autowired
+    private IdempotencyService idempotency;
+
+
+    // ==============================
+    // Functions
+    // ==============================
+    @Override
+    public void doFilter(
+        ServletRequest  request,
+        ServletResponse response,
+        FilterChain     chain
+    ) throws IOException, ServletException {
+        HttpServletRequest  httpRequest  = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        String              key          = httpRequest.getHeader(HEADER);
+        User                user         = (User) httpRequest.getAttribute(CurrentUserArgumentResolver.ATTRIBUTE);
+
+        if (key == null || !"POST".equals(httpRequest.getMethod()) || user == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST, HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters.");
+            return;
+        }
+
+        byte[] body        = StreamUtils.copyToByteArray(httpRequest.getInputStream());
+        String requestHash = IdempotencyService.hash(body);
+        String scope       = user.getId() + ":" + httpRequest.getRequestURI() + ":" + key;
+
+        Stored stored = idempotency.claim(scope, requestHash);
+        if (stored != null) {
+            replay(stored, requestHash, httpResponse);
+            return;
+        }
+
+        ContentCachingResponseWrapper cachingResponse = new ContentCachingResponseWrapper(httpResponse);
+        boolean                       completed       = false;
+        try {
+            chain.doFilter(new CachedBodyRequest(httpRequest, body), cachingResponse);
+            int status = cachingResponse.getStatus();
+            if (status >= 200 && status < 300) {
+                idempotency.complete(scope, requestHash, status, cachingResponse.getContentType(), cachingResponse.getContentAsByteArray());
+                completed = true;
+            }
+        } finally {
+            if (!completed) idempotency.release(scope);
+            cachingResponse.copyBodyToResponse();
+        }
+    }
+
+
+    // =====================================================
+    // Utility
+    // =====================================================
+    private void replay(Stored stored, String requestHash, HttpServletResponse response) throws IOException {
+        if (!stored.getRequestHash().equals(requestHash)) {
+            response.sendError(422, HEADER + " was already used with a different request body.");
+            return;
+        }
+        if (stored.getState() == State.PENDING) {
+            response.sendError(HttpServletResponse.SC_CONFLICT, "A request with this " + HEADER + " is still in progress.");
+            return;
+        }
+        logger.debug("Replaying the stored response of an idempotent request");
+        response.setStatus(stored.getStatus());
+        if (stored.getContentType() != null) response.setContentType(stored.getContentType());
+        response.setHeader(REPLAYED_HEADER, "true");
+        response.getOutputStream().write(stored.getBody());
+    }
+
+    /** Hands the already read body to the rest of the chain. */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override public int     read()                          { return in.read(); }
+                @Override public int     read(byte[] b, int off, int len) { return in.read(b, off, len); }
+                @Override public boolean isFinished()                    { return in.available() == 0; }
+                @Override public boolean isReady()                       { return true; }
+                @Override public void    setReadListener(ReadListener l) { throw new UnsupportedOperationException(); }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.thirteenseven.workoutdiary.filter;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.io.IOException;
+
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerMapping;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.service.MongoCommandStats;
+
+/**
+ * Books the MongoDB commands each request sends on its endpoint, keyed by
+ * method and path pattern so path variables do not multiply the keys. See
+ * {@link MongoCommandStats}.
+ */
+@Component
+public class MongoRoundTripFilter implements Filter {
+
+    @Autowired
+    private MongoCommandStats mongoCommandStats;
+
+
+    // ==============================
+    // Functions
+    // ==============================
+    @Override
+    public void doFilter(
+        ServletRequest  request,
+        ServletResponse response,
+        FilterChain     chain
+    ) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        mongoCommandStats.startRequest();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            /** Set by Spring MVC once a handler matched */
+            Object pattern = httpRequest.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            mongoCommandStats.endRequest(httpRequest.getMethod() + " " + (pattern == null ? "(unmatched)" : pattern));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.thirteenseven.workoutdiary.payload.response;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.List;
+import java.util.Map;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+/**
+ * Result of one batched write over a list of keys (ids or names).
+ * <ul>
+ * <li>{@code outcomes}: per key, in the order the client sent them.</li>
+ * <li>{@code matched}: documents the write applied to.</li>
+ * <li>{@code modified}: documents actually changed (or deleted).</li>
+ * <li>{@code documents}: the matched documents; {@code null} when the 
+ * client did not ask for them.</li>
+ * </ul>
+ */
+@Getter
+@AllArgsConstructor
+public class BulkWriteResult<T> {
+
+    public enum Outcome { APPLIED, NOT_FOUND }
+
+    private final Map<String, Outcome> outcomes;
+    private final long                 matched;
+    private final long                 modified;
+    private final List<T>              documents;
+
+
+    /** The same result with {@code documents} left out. */
+    public BulkWriteResult<T> withoutDocuments() {
+        return new BulkWriteResult<>(outcomes, matched, modified, null);
+    }
+}
@@ -0,0 +1,19 @@
+package com.thirteenseven.workoutdiary.payload.response;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+/**
+ * Outcome of a bulk import. Only the rejected items are listed; their 
+ * {@code index} is the line of the request body they start on (1-based).
+ */
+@Getter
+@AllArgsConstructor
+public class ImportReport {
+    private final int              items;
+    private final long             inserted;
+    private final List<ItemResult> errors;
+}
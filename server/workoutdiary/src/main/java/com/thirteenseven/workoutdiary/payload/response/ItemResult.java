@@ -0,0 +1,21 @@
+package com.thirteenseven.workoutdiary.payload.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+/**
+ * Outcome of one item of a bulk request, in the order the client sent them.
+ * {@code message} explains {@code DUPLICATE} and {@code FAILED} items.
+ */
+@Getter
+@AllArgsConstructor
+public class ItemResult {
+
+    public enum Outcome { INSERTED, UPDATED, DUPLICATE, FAILED }
+
+    private final int     index;
+    private final String  key;
+    private final Outcome outcome;
+    private final String  message;
+}
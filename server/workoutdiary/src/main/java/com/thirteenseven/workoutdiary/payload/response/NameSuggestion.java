@@ -0,0 +1,17 @@
+package com.thirteenseven.workoutdiary.payload.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+/**
+ * One autocomplete match. {@code score} is in {@code (0, 1]}: exact and 
+ * prefix matches rank above typo-tolerant (trigram) ones.
+ */
+@Getter
+@AllArgsConstructor
+public class NameSuggestion {
+    private final String id;
+    private final String name;
+    private final double score;
+}
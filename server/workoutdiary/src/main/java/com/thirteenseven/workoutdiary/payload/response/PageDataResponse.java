@@ -0,0 +1,40 @@
+package com.thirteenseven.workoutdiary.payload.response;
+
+import java.util.Map;
+
+import lombok.Getter;
+
+
+/**
+ * A {@link DataResponse} of one page of a search.
+ * <ul>
+ * <li>{@code nextCursor}: sent back by the client to fetch the following 
+ * keyset page; {@code null} on the last page or when the search has no 
+ * cursor mode.</li>
+ * <li>{@code total}: number of matching documents; {@code null} unless the 
+ * client asked for it.</li>
+ * <li>{@code facets}: per facet, the number of matching documents by value;
+ * {@code null} unless the client asked for it.</li>
+ * </ul>
+ */
+@Getter
+public class PageDataResponse<T> extends DataResponse<T> {
+
+    private final String                         nextCursor;
+    private final Long                           total;
+    private final Map<String, Map<String, Long>> facets;
+
+    public PageDataResponse(T data, String message, boolean hasNextPage, String nextCursor, Long total) {
+        this(data, message, hasNextPage, nextCursor, total, null);
+    }
+
+    public PageDataResponse(
+        T data, String message, boolean hasNextPage, String nextCursor, Long total,
+        Map<String, Map<String, Long>> facets
+    ) {
+        super(data, message, hasNextPage);
+        this.nextCursor = nextCursor;
+        this.total      = total;
+        this.facets     = facets;
+    }
+}
@@ -0,0 +1,37 @@
+package com.thirteenseven.workoutdiary.payload.response;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+
+/**
+ * One point of an exercise progression series: a single session, or all 
+ * sessions of a day/week/month bucket.
+ * <ul>
+ * <li>{@code topSet}: heaviest single repetition.</li>
+ * <li>{@code topSetReps}: repetitions done at {@code topSet} in that set.</li>
+ * <li>{@code volume}: sum of the weights of every repetition.</li>
+ * <li>{@code estimated1RM}: best Epley estimate over all sets, 
+ * {@code w * (1 + n / 30)}.</li>
+ * <li>{@code note}: only set for per-session points.</li>
+ * </ul>
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+public class ProgressionPoint {
+    private final Date    date;
+    private final int     sessions;
+    private final int     sets;
+    private final int     reps;
+    private final int     maxSetReps;
+    private final double  topSet;
+    private final int     topSetReps;
+    private final double  volume;
+    private final double  estimated1RM;
+    private final String  note;
+}
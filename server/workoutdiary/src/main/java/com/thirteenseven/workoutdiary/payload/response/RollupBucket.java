@@ -0,0 +1,23 @@
+package com.thirteenseven.workoutdiary.payload.response;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+/**
+ * Totals of one day or week of records, read from the rollup collection.
+ * {@code exerciseId} is {@code null} when the bucket sums up every exercise.
+ */
+@Getter
+@AllArgsConstructor
+public class RollupBucket {
+    private final Date   start;
+    private final String exerciseId;
+    private final long   sessions;
+    private final long   sets;
+    private final long   reps;
+    private final double volume;
+}
@@ -0,0 +1,258 @@
+package com.thirteenseven.workoutdiary.service;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Service;
+
+import com.thirteenseven.workoutdiary.model.User;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+
+/**
+ * Bounded cache of JWTs which already passed signature validation, together
+ * with the email they carry, the resolved {@link UserDetails} and the 
+ * {@link User} entity. A request with a cached token skips the crypto and the
+ * user lookups entirely.
+ * <p>
+ * Entries are keyed by a SHA-256 digest of the token, so raw tokens are not 
+ * kept in memory, and they are dropped:
+ * <ul>
+ * <li>when the token expires (its {@code exp} claim), or after 
+ * {@code WorkoutDiary.app.authCacheTtlSeconds} at most;</li>
+ * <li>when users or roles are written ({@link #evictAll()});</li>
+ * <li>on logout ({@link #evict(String)});</li>
+ * <li>least recently used first, when the cache is full.</li>
+ * </ul>
+ * A verification is only cached if no {@link #evictAll()} ran while its 
+ * user was being loaded, so a stale load cannot outlive the eviction.
+ */
+@Service
+public class AuthTokenCacheService {
+
+    private static final Logger       logger = LoggerFactory.getLogger(AuthTokenCacheService.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Value("${WorkoutDiary.app.authCacheSize:10000}")
+    private int  maxEntries;
+    @Value("${WorkoutDiary.app.authCacheTtlSeconds:900}")
+    private long ttlSeconds;
+
+    /** Share of the entries dropped at once when the cache is full */
+    private static final int LRU_EVICTION_PERCENT = 10;
+
+    private final Map<String, Entry> entries    = new ConcurrentHashMap<>();
+    /** Bumped by every {@link #evictAll()} */
+    private final AtomicLong         generation = new AtomicLong();
+
+    // ~~~~~~~~ metrics ~~~~~~~~
+    private final LongAdder  hits         = new LongAdder();
+    private final LongAdder  misses       = new LongAdder();
+    private final LongAdder  evictions    = new LongAdder();
+    private final LongAdder  authCount    = new LongAdder();
+    private final LongAdder  authNanos    = new LongAdder();
+    private final AtomicLong maxAuthNanos = new AtomicLong();
+
+
+    /**
+     * A verified token.
+     */
+    @Getter
+    public static final class Entry {
+        private final    String      email;
+        private final    UserDetails userDetails;
+        @Getter(AccessLevel.NONE)
+        private final    User        user;
+        /** epoch millis */
+        private final    long        expiresAt;
+        /** epoch millis of the last lookup, for the LRU eviction */
+        private volatile long        lastUsed;
+
+        Entry(String email, UserDetails userDetails, User user, long expiresAt, long now) {
+            this.email       = email;
+            this.userDetails = userDetails;
+            this.user        = user;
+            this.expiresAt   = expiresAt;
+            this.lastUsed    = now;
+        }
+
+        /**
+         * A copy of the cached user, fresh on every call: the cached 
+         * instance is shared by concurrent requests, which may change or 
+         * embed what they get.
+         */
+        public User getUser() {
+            if (user == null) return null;
+            User copy = BeanUtils.instantiateClass(User.class);
+            BeanUtils.copyProperties(user, copy);
+            if (user.getRoles() != null) copy.setRoles(new HashSet<>(user.getRoles()));
+            return copy;
+        }
+    }
+
+
+    // =======================================================================
+    // Lookups
+    // =======================================================================
+    /** The cached verification of {@code token}, or {@code null} if absent or expired. */
+    public Entry get(String token) {
+        String key   = digest(token);
+        Entry  entry = entries.get(key);
+        long   now   = System.currentTimeMillis();
+        if (entry != null && entry.getExpiresAt() <= now) {
+            entries.remove(key, entry);
+            evictions.increment();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+            entry.lastUsed = now;
+        }
+        return entry;
+    }
+
+    /**
+     * The current eviction generation. Read it before loading the user of 
+     * a token and hand it to {@link #put}.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches a token which has just passed validation. Tokens without an 
+     * {@code exp} claim are not cached, nor are verifications loaded before
+     * the last {@link #evictAll()}.
+     *
+     * @param loadedAt {@link #generation()} read before the user was loaded
+     * @return the cached entry, or {@code null} if the token was not cached
+     */
+    public Entry put(String token, String email, UserDetails userDetails, User user, long loadedAt) {
+        long now       = System.currentTimeMillis();
+        long expiresAt = Math.min(readExpiry(token), now + ttlSeconds * 1000);
+        if (expiresAt <= now || generation.get() != loadedAt) return null;
+
+        if (entries.size() >= maxEntries) makeRoom(now);
+        String key   = digest(token);
+        Entry  entry = new Entry(email, userDetails, user, expiresAt, now);
+        entries.put(key, entry);
+        /** An evictAll which bumped the generation meanwhile may have cleared before the put */
+        if (generation.get() != loadedAt) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+
+    // =======================================================================
+    // Eviction
+    // =======================================================================
+    /** Drops a single token, e.g. on logout. */
+    public void evict(String token) {
+        if (token != null && entries.remove(digest(token)) != null) evictions.increment();
+    }
+
+    /** Drops every token, e.g. after users or roles have been written. */
+    public void evictAll() {
+        generation.incrementAndGet();
+        int size = entries.size();
+        entries.clear();
+        evictions.add(size);
+        logger.debug("Evicted all " + size + " cached token(s)");
+    }
+
+
+    // =======================================================================
+    // Metrics
+    // =======================================================================
+    /** Records the time the auth filter spent on one request. */
+    public void recordAuthLatency(long nanos) {
+        authCount.increment();
+        authNanos.add(nanos);
+        maxAuthNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    public Map<String, Long> getStats() {
+        long count = authCount.sum();
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("size",                 (long) entries.size());
+        stats.put("hits",                 hits.sum());
+        stats.put("misses",               misses.sum());
+        stats.put("evictions",            evictions.sum());
+        stats.put("authRequests",         count);
+        stats.put("avgAuthLatencyMicros", count == 0 ? 0 : authNanos.sum() / count / 1000);
+        stats.put("maxAuthLatencyMicros", maxAuthNanos.get() / 1000);
+        return stats;
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    /**
+     * Drops expired entries, then, if still full, the least recently used
+     * {@link #LRU_EVICTION_PERCENT} percent, so the sort is paid once per 
+     * many puts rather than on each.
+     */
+    private void makeRoom(long now) {
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.getExpiresAt() <= now);
+        if (entries.size() >= maxEntries) {
+            int                            drop  = Math.max(1, maxEntries * LRU_EVICTION_PERCENT / 100);
+            List<Map.Entry<String, Entry>> byUse = new ArrayList<>(entries.entrySet());
+            byUse.sort(Comparator.comparingLong(e -> e.getValue().getLastUsed()));
+            for (Map.Entry<String, Entry> e : byUse.subList(0, Math.min(drop, byUse.size()))) {
+                entries.remove(e.getKey(), e.getValue());
+            }
+        }
+        evictions.add(Math.max(0, before - entries.size()));
+    }
+
+    /** {@code exp} claim of a validated token in epoch millis, or 0 if it has none. */
+    private long readExpiry(String token) {
+        try {
+            String[] parts   = token.split("\\.");
+            JsonNode payload = mapper.readTree(Base64.getUrlDecoder().decode(parts[1]));
+            return payload.has("exp") ? payload.get("exp").asLong() * 1000 : 0;
+        } catch (Exception e) {
+            logger.debug("Cannot read exp claim: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM ships SHA-256
+        }
+    }
+}
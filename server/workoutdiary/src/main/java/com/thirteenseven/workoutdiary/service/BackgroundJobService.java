@@ -0,0 +1,170 @@
+package com.thirteenseven.workoutdiary.service;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+
+
+/**
+ * Runs long maintenance work (batched deletes, rebuilds, migrations) off the
+ * request threads, one job at a time so it never competes with itself for
+ * the database. Jobs report progress through {@link Job#addProcessed} and 
+ * must return early once {@link Job#isCancelled()} turns true.
+ * <p>
+ * The last {@code WorkoutDiary.app.jobHistorySize} finished jobs are kept 
+ * for status lookups.
+ */
+@Service
+public class BackgroundJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundJobService.class);
+
+    @Value("${WorkoutDiary.app.jobHistorySize:100}")
+    private int historySize;
+
+    private final Map<String, Job> jobs     = new ConcurrentHashMap<>();
+    private final ExecutorService  executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "workoutdiary-jobs");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+
+    /** Body of a job. */
+    @FunctionalInterface
+    public interface Work {
+        void run(Job job) throws Exception;
+    }
+
+    public enum State { QUEUED, RUNNING, DONE, CANCELLED, FAILED }
+
+    /**
+     * Status of a submitted job, as returned to clients.
+     */
+    @Getter
+    public static final class Job {
+        private final    String     id;
+        private final    String     name;
+        private final    Date       submittedAt = new Date();
+        private volatile State      state       = State.QUEUED;
+        private volatile Date       finishedAt;
+        private volatile String     error;
+        private volatile boolean    cancelled;
+        private final    AtomicLong processed   = new AtomicLong();
+
+        private Job(String id, String name) {
+            this.id   = id;
+            this.name = name;
+        }
+
+        public long getProcessed() {
+            return processed.get();
+        }
+
+        public void addProcessed(long count) {
+            processed.addAndGet(count);
+        }
+    }
+
+
+    // =======================================================================
+    // Public
+    // =======================================================================
+    /** Queues a job and returns its status right away. */
+    public Job submit(String name, Work work) {
+        Job job = new Job(UUID.randomUUID().toString(), name);
+        jobs.put(job.id, job);
+        executor.execute(() -> run(job, work));
+        return job;
+    }
+
+    public Job get(String id) {
+        return jobs.get(id);
+    }
+
+    /** All known jobs, newest first. */
+    public List<Job> list() {
+        List<Job> list = new ArrayList<>(jobs.values());
+        list.sort(Comparator.comparing(Job::getSubmittedAt).reversed());
+        return list;
+    }
+
+    /** Asks a job to stop after its current batch. */
+    public boolean cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null) return false;
+        job.cancelled = true;
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        jobs.values().forEach(job -> job.cancelled = true);
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) executor.shutdownNow();
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    private void run(Job job, Work work) {
+        if (job.cancelled) {
+            finish(job, State.CANCELLED, null);
+            return;
+        }
+        job.state = State.RUNNING;
+        logger.info("Job started: " + job.name + " (" + job.id + ")");
+        try {
+            work.run(job);
+            finish(job, job.cancelled ? State.CANCELLED : State.DONE, null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finish(job, State.CANCELLED, null);
+        } catch (Exception e) {
+            logger.error("Job failed: " + job.name + " (" + job.id + ")", e);
+            finish(job, State.FAILED, e.getMessage());
+        }
+    }
+
+    private void finish(Job job, State state, String error) {
+        job.error      = error;
+        job.finishedAt = new Date();
+        job.state      = state;
+        logger.info("Job " + state + ": " + job.name + " (" + job.id + "), processed " + job.getProcessed());
+        pruneHistory();
+    }
+
+    /** Drops the oldest finished jobs beyond the history size. */
+    private void pruneHistory() {
+        List<Job> finished = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (job.finishedAt != null) finished.add(job);
+        }
+        if (finished.size() <= historySize) return;
+        finished.sort(Comparator.comparing(Job::getFinishedAt));
+        for (int i = 0; i < finished.size() - historySize; i++) {
+            jobs.remove(finished.get(i).id);
+        }
+    }
+}
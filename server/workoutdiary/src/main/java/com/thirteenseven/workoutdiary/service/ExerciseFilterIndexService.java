@@ -0,0 +1,219 @@
+package com.thirteenseven.workoutdiary.service;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ~~~~~~~~ Mongo ~~~~~~~~
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.model.Exercise;
+import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
+
+
+/**
+ * In-process bitmap index over the reference fields the exercise search 
+ * filters on ({@code muscleGroups}, {@code difficulty}, {@code exerciseType}
+ * and {@code author}).
+ * <p>
+ * Every exercise gets an ordinal (its position in {@link #ORDER}, the 
+ * order the Mongo search sorts by, so both cut the same pages), and every
+ * referenced id a {@link BitSet} of the exercises pointing at it. A 
+ * filter then costs a few word-wide AND/OR operations instead of a 
+ * per-document array match in Mongo, and only the ids of the requested page
+ * are fetched afterwards.
+ * <p>
+ * Like {@link ExerciseNameIndexService}, the index is an immutable snapshot
+ * dropped by {@link #invalidate()} on every exercise write and rebuilt from
+ * a projection on the next lookup. Soft-deleted exercises are left out.
+ */
+@Service
+public class ExerciseFilterIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExerciseFilterIndexService.class);
+
+    /** Indexed fields, as stored on the exercise documents */
+    public static final String MUSCLE_GROUPS = "muscleGroups";
+    public static final String DIFFICULTY    = "difficulty";
+    public static final String EXERCISE_TYPE = "exerciseType";
+    public static final String AUTHOR        = "author";
+
+    private static final List<String> FIELDS = List.of(MUSCLE_GROUPS, DIFFICULTY, EXERCISE_TYPE, AUTHOR);
+
+    /** Order of the search results: by name, then id for equal (or missing) names */
+    public static final Sort ORDER = Sort.by("name").and(Sort.by("id"));
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong                version  = new AtomicLong();
+
+
+    // =======================================================================
+    // Public
+    // =======================================================================
+    /**
+     * Combines per-field filters: values of one field are AND-ed when 
+     * {@code strict} (Mongo's {@code $all}) and OR-ed otherwise ({@code $in}),
+     * and the fields are AND-ed together.
+     *
+     * @param filters referenced ids by field name; absent or empty entries 
+     *                do not filter
+     */
+    public Match match(Map<String, ? extends Collection<String>> filters, boolean strict) {
+        Snapshot current = snapshot();
+        BitSet   result  = new BitSet(current.ids.length);
+        result.set(0, current.ids.length);
+
+        for (Map.Entry<String, ? extends Collection<String>> filter : filters.entrySet()) {
+            Collection<String> values = filter.getValue();
+            if (values == null || values.isEmpty()) continue;
+            Map<String, BitSet> postings = current.postings.get(filter.getKey());
+            if (postings == null) throw new IllegalArgumentException("Field is not indexed: " + filter.getKey());
+
+            BitSet combined = null;
+            for (String value : values) {
+                BitSet bits = postings.getOrDefault(value, EMPTY);
+                if (combined == null)  combined = (BitSet) bits.clone();
+                else if (strict)       combined.and(bits);
+                else                   combined.or(bits);
+            }
+            result.and(combined);
+        }
+        return new Match(current, result);
+    }
+
+    /** Drops the snapshot after exercises have been written. */
+    public void invalidate() {
+        version.incrementAndGet();
+        snapshot.set(null);
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    private static final BitSet EMPTY = new BitSet(0);
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot.get();
+        if (current != null) return current;
+
+        long   stamp      = version.get();
+        String collection = mongoTemplate.getCollectionName(Exercise.class);
+        List<Document> docs = new ArrayList<>();
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(collection)
+                .find(BaseDocumentService.notSoftDeleted(mongoTemplate, Exercise.class))
+                .projection(Projections.include(FIELDS))
+                .sort(Sorts.ascending("name", "_id")) // ORDER, in document field names
+                .iterator()) {
+            while (cursor.hasNext()) docs.add(cursor.next());
+        }
+        current = new Snapshot(docs);
+        if (snapshot.compareAndSet(null, current) && version.get() != stamp) {
+            /** Invalidated while loading; don't keep a stale snapshot around */
+            snapshot.compareAndSet(current, null);
+        }
+        logger.debug("Indexed filters of " + docs.size() + " exercise(s)");
+        return current;
+    }
+
+
+
+
+    /** Result of {@link #match}; pages are cut in ordinal order. */
+    public static final class Match {
+        private final Snapshot snapshot;
+        private final BitSet   bits;
+
+        private Match(Snapshot snapshot, BitSet bits) {
+            this.snapshot = snapshot;
+            this.bits     = bits;
+        }
+
+        public long count() {
+            return bits.cardinality();
+        }
+
+        /** Number of matching exercises per referenced id of {@code field}; ids without any are left out. */
+        public Map<String, Long> countBy(String field) {
+            Map<String, BitSet> postings = snapshot.postings.get(field);
+            if (postings == null) throw new IllegalArgumentException("Field is not indexed: " + field);
+
+            Map<String, Long> counts = new HashMap<>();
+            postings.forEach((id, owners) -> {
+                BitSet both = (BitSet) owners.clone();
+                both.and(bits);
+                int count = both.cardinality();
+                if (count > 0) counts.put(id, (long) count);
+            });
+            return counts;
+        }
+
+        /** Ids of every matching exercise, in ordinal order. */
+        public List<String> ids() {
+            List<String> ids = new ArrayList<>(bits.cardinality());
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) ids.add(snapshot.ids[i]);
+            return ids;
+        }
+
+        /** Ids of the exercises on the page, plus one more if there is a next page. */
+        public List<String> idsOfPage(int page, int size) {
+            List<String> ids  = new ArrayList<>(size + 1);
+            long         skip = (long) page * size;
+            for (int i = bits.nextSetBit(0); i >= 0 && ids.size() <= size; i = bits.nextSetBit(i + 1)) {
+                if (skip > 0) { skip--; continue; }
+                ids.add(snapshot.ids[i]);
+            }
+            return ids;
+        }
+    }
+
+    /** Immutable bitmaps of one load of the collection. */
+    private static final class Snapshot {
+        /** Exercise id by ordinal */
+        final String[]                         ids;
+        /** Field name -> referenced id -> exercises referencing it */
+        final Map<String, Map<String, BitSet>> postings;
+
+        Snapshot(List<Document> docs) {
+            this.ids = new String[docs.size()];
+            Map<String, Map<String, BitSet>> fields = new HashMap<>();
+            for (String field : FIELDS) fields.put(field, new HashMap<>());
+
+            for (int i = 0; i < docs.size(); i++) {
+                Document doc = docs.get(i);
+                ids[i] = BaseDocumentService.referencedIds(doc.get("_id")).get(0);
+                for (String field : FIELDS) {
+                    Map<String, BitSet> postings = fields.get(field);
+                    for (String ref : BaseDocumentService.referencedIds(doc.get(field))) {
+                        postings.computeIfAbsent(ref, k -> new BitSet(docs.size())).set(i);
+                    }
+                }
+            }
+            fields.replaceAll((field, postings) -> Collections.unmodifiableMap(postings));
+            this.postings = Collections.unmodifiableMap(fields);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.thirteenseven.workoutdiary.service;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ~~~~~~~~ Mongo ~~~~~~~~
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.model.Exercise;
+import com.thirteenseven.workoutdiary.payload.response.NameSuggestion;
+import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
+
+
+/**
+ * In-process autocomplete over exercise names, so search-as-you-type does 
+ * not round-trip to Mongo.
+ * <ul>
+ * <li>Prefix: the names, and every word of every name, sit in sorted 
+ * arrays; a binary search finds the range starting with the query (a 
+ * flattened trie), so only the hits are visited.</li>
+ * <li>Typos: trigram postings; names sharing enough trigrams with the query
+ * (Dice coefficient) are returned even without a prefix match. Only names
+ * holding one of the query's rarest trigrams are scored, at most 
+ * {@link #MAX_FUZZY_CANDIDATES} of them.</li>
+ * </ul>
+ * A lookup costs the hits and the candidates, never the number of names. 
+ * Soft-deleted exercises are left out. The index is an immutable snapshot. Exercise writes call 
+ * {@link #invalidate()} and the next lookup rebuilds it from a name-only 
+ * projection, the same way the reference catalog reloads.
+ */
+@Service
+public class ExerciseNameIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExerciseNameIndexService.class);
+
+    /** Lowest trigram similarity still worth suggesting */
+    private static final double MIN_SIMILARITY       = 0.3;
+    /** Most names scored for trigram similarity per lookup */
+    private static final int    MAX_FUZZY_CANDIDATES = 500;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong                version  = new AtomicLong();
+
+
+    // =======================================================================
+    // Public
+    // =======================================================================
+    /**
+     * Best matches for a partial or misspelled name, best first.
+     * 
+     * @param limit maximum number of suggestions
+     */
+    public List<NameSuggestion> suggest(String query, int limit) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty() || limit <= 0) return new ArrayList<>();
+        return snapshot().suggest(normalized, limit);
+    }
+
+    /** Drops the snapshot after exercises have been written. */
+    public void invalidate() {
+        version.incrementAndGet();
+        snapshot.set(null);
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    private Snapshot snapshot() {
+        Snapshot current = snapshot.get();
+        if (current != null) return current;
+
+        long           stamp = version.get();
+        List<String[]> names = new ArrayList<>();
+        String         collection = mongoTemplate.getCollectionName(Exercise.class);
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(collection)
+                .find(BaseDocumentService.notSoftDeleted(mongoTemplate, Exercise.class))
+                .projection(Projections.include("name"))
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document doc  = cursor.next();
+                Object   id   = doc.get("_id");
+                String   name = doc.getString("name");
+                if (name == null) continue;
+                names.add(new String[] { id instanceof ObjectId ? ((ObjectId) id).toHexString() : String.valueOf(id), name });
+            }
+        }
+        current = new Snapshot(names);
+        if (snapshot.compareAndSet(null, current) && version.get() != stamp) {
+            /** Invalidated while loading; don't keep a stale snapshot around */
+            snapshot.compareAndSet(current, null);
+        }
+        logger.debug("Indexed " + names.size() + " exercise name(s)");
+        return current;
+    }
+
+    static String normalize(String text) {
+        return text == null ? "" : text.strip().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    /** Trigrams of a normalized string, padded so short words still have some. */
+    static Set<String> trigrams(String normalized) {
+        String      padded = "  " + normalized + " ";
+        Set<String> grams  = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) grams.add(padded.substring(i, i + 3));
+        return grams;
+    }
+
+
+
+
+    /** Immutable index over one load of the names. */
+    private static final class Snapshot {
+        private final String[]             ids;
+        private final String[]             names;
+        private final String[]             normalized;
+        private final int[]                trigramCounts;
+        /** Names by normalized name, for whole-name prefix ranges */
+        private final int[]                byName;
+        /** Every word of every name, sorted, with the name it belongs to */
+        private final String[]             words;
+        private final int[]                wordOwners;
+        /** Names holding each trigram, in ascending order */
+        private final Map<String, int[]>   postings;
+
+        Snapshot(List<String[]> entries) {
+            int size           = entries.size();
+            this.ids           = new String[size];
+            this.names         = new String[size];
+            this.normalized    = new String[size];
+            this.trigramCounts = new int[size];
+
+            List<Object[]>                word     = new ArrayList<>();
+            Map<String, List<Integer>>    postings = new HashMap<>();
+            for (int i = 0; i < size; i++) {
+                ids[i]        = entries.get(i)[0];
+                names[i]      = entries.get(i)[1];
+                normalized[i] = normalize(names[i]);
+                for (String token : normalized[i].split(" ")) {
+                    if (!token.isEmpty()) word.add(new Object[] { token, i });
+                }
+                Set<String> grams = trigrams(normalized[i]);
+                trigramCounts[i] = grams.size();
+                for (String gram : grams) postings.computeIfAbsent(gram, k -> new ArrayList<>()).add(i);
+            }
+
+            this.byName = IntStream.range(0, size).boxed()
+                .sorted(Comparator.comparing(i -> normalized[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+            word.sort((a, b) -> ((String) a[0]).compareTo((String) b[0]));
+            this.words      = new String[word.size()];
+            this.wordOwners = new int[word.size()];
+            for (int i = 0; i < word.size(); i++) {
+                words[i]      = (String)  word.get(i)[0];
+                wordOwners[i] = (Integer) word.get(i)[1];
+            }
+
+            this.postings = new HashMap<>(postings.size());
+            postings.forEach((gram, owners) -> this.postings.put(gram, owners.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        List<NameSuggestion> suggest(String query, int limit) {
+            /** Score per hit name; only names reached through an index are ever touched */
+            Map<Integer, Double> scores = new LinkedHashMap<>();
+
+            /** Prefix hits: the whole name, or any of its words */
+            int from = lowerBound(byName.length, k -> normalized[byName[k]], query);
+            for (int k = from; k < byName.length && normalized[byName[k]].startsWith(query); k++) {
+                int i = byName[k];
+                scores.put(i, normalized[i].equals(query) ? 1.0 : 0.9);
+            }
+            String lastWord = query.substring(query.lastIndexOf(' ') + 1);
+            from = lowerBound(words.length, w -> words[w], lastWord);
+            for (int w = from; w < words.length && words[w].startsWith(lastWord); w++) {
+                int owner = wordOwners[w];
+                if (!scores.containsKey(owner) && normalized[owner].contains(query)) scores.put(owner, 0.8);
+            }
+
+            /** Typo-tolerant hits: shared trigrams, scored with the Dice coefficient */
+            for (Map.Entry<Integer, Double> hit : fuzzyHits(query).entrySet()) {
+                scores.merge(hit.getKey(), 0.7 * hit.getValue(), Math::max);
+            }
+
+            List<Integer> order = new ArrayList<>(scores.keySet());
+            order.sort((a, b) -> {
+                int byScore = Double.compare(scores.get(b), scores.get(a));
+                return byScore != 0 ? byScore : names[a].compareToIgnoreCase(names[b]);
+            });
+
+            List<NameSuggestion> suggestions = new ArrayList<>(Math.min(limit, order.size()));
+            for (int k = 0; k < order.size() && k < limit; k++) {
+                int i = order.get(k);
+                suggestions.add(new NameSuggestion(ids[i], names[i], scores.get(i)));
+            }
+            return suggestions;
+        }
+
+        /**
+         * Dice coefficient of the names similar enough to {@code query}.
+         * <p>
+         * A name reaching {@link #MIN_SIMILARITY} shares at least 
+         * {@code needed} of the query's trigrams, so it holds one of the 
+         * {@code grams - needed + 1} rarest ones; only their postings are 
+         * read for candidates, and each candidate is then checked against 
+         * every query trigram by binary search.
+         */
+        private Map<Integer, Double> fuzzyHits(String query) {
+            List<int[]> lists = new ArrayList<>();
+            for (String gram : trigrams(query)) lists.add(postings.getOrDefault(gram, new int[0]));
+            int grams = lists.size();
+            lists.sort(Comparator.comparingInt(owners -> owners.length));
+
+            int          needed     = Math.max(1, (int) Math.ceil(MIN_SIMILARITY * (grams + 1) / 2));
+            Set<Integer> candidates = new LinkedHashSet<>();
+            for (int g = 0; g < grams - needed + 1 && candidates.size() < MAX_FUZZY_CANDIDATES; g++) {
+                for (int owner : lists.get(g)) {
+                    candidates.add(owner);
+                    if (candidates.size() >= MAX_FUZZY_CANDIDATES) break;
+                }
+            }
+
+            Map<Integer, Double> hits = new HashMap<>();
+            for (int candidate : candidates) {
+                int shared = 0;
+                for (int[] owners : lists) if (Arrays.binarySearch(owners, candidate) >= 0) shared++;
+                double dice = 2.0 * shared / (grams + trigramCounts[candidate]);
+                if (dice >= MIN_SIMILARITY) hits.put(candidate, dice);
+            }
+            return hits;
+        }
+
+        /** First position in {@code [0, length)} whose key is not smaller than {@code prefix}. */
+        private static int lowerBound(int length, IntFunction<String> keyAt, String prefix) {
+            int lo = 0, hi = length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (keyAt.apply(mid).compareTo(prefix) < 0) lo = mid + 1;
+                else                                        hi = mid;
+            }
+            return lo;
+        }
+    }
+}
@@ -1,22 +1,469 @@
 package com.thirteenseven.workoutdiary.service;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.DBRef;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mapping.InstanceCreatorMetadata;
+import org.springframework.data.mapping.Parameter;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+import com.thirteenseven.workoutdiary.model.Exercise;
 import com.thirteenseven.workoutdiary.model.ExerciseRecord;
+import com.thirteenseven.workoutdiary.model.User;
+import com.thirteenseven.workoutdiary.model.base.Location;
+import com.thirteenseven.workoutdiary.payload.response.ProgressionPoint;
 import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
+import com.thirteenseven.workoutdiary.utilities.Timing;
+
+import jakarta.annotation.PostConstruct;
 
 @Service
 public class ExerciseRecordService extends BaseDocumentService {
 
     @Autowired
-    private MongoTemplate mongoTemplate;
+    private MongoTemplate       mongoTemplate;
+    @Autowired
+    private RecordBucketService recordBuckets;
+
+    /** References of a record, loaded once per page instead of once per record */
+    private static final Map<String, Class<?>> REFERENCES = Map.of(
+        "user",     User.class,
+        "exercise", Exercise.class
+    );
 
     @Override
     protected MongoTemplate getMongoTemplate() {
         return mongoTemplate;
     }
+
+    @Override
+    protected <T> List<T> findEntities(Query query, Class<T> clazz) {
+        if (clazz != ExerciseRecord.class) return super.findEntities(query, clazz);
+        return findWithBatchedReferences(query, clazz, REFERENCES);
+    }
+
+    /** Records read per cursor round trip of an export */
+    private static final int          EXPORT_BATCH_SIZE = 500;
+    private static final ObjectMapper EXPORT_MAPPER     = new ObjectMapper();
+    private static final String       CSV_HEADER        = "id,date,exercise,set,repetitions,weights,note";
+
+    /** Granularity of a progression series. */
+    public enum Bucket {
+        /** One point per record. */
+        SESSION,
+        DAY,
+        /** Weeks start on Monday. */
+        WEEK,
+        MONTH
+    }
+
+
+    /** Output of {@link #export}. */
+    public enum ExportFormat {
+        /** One JSON record per line, shaped like the body of {@code /add}. */
+        NDJSON("application/x-ndjson", "ndjson"),
+        /** One row per set, weights of the repetitions separated by spaces. */
+        CSV("text/csv", "csv");
+
+        public final String contentType;
+        public final String extension;
+
+        ExportFormat(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension   = extension;
+        }
+    }
+
+
+    /** Indexes backing the record search, its keyset cursors and the progression series. */
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps(ExerciseRecord.class).ensureIndex(
+            new Index()
+                .on("user", Sort.Direction.ASC)
+                .on("date", Sort.Direction.DESC)
+                .on("_id",  Sort.Direction.DESC)
+                .named("user_date_id")
+        );
+        mongoTemplate.indexOps(ExerciseRecord.class).ensureIndex(
+            new Index()
+                .on("user",     Sort.Direction.ASC)
+                .on("exercise", Sort.Direction.ASC)
+                .on("date",     Sort.Direction.ASC)
+                .named("user_exercise_date")
+        );
+    }
+
+
+    /**
+     * Progression series of one exercise for one user, computed by a single
+     * aggregation over {@code sets.repetitions} (one weight per repetition).
+     * In the bucket storage mode, once migrated, the sessions are unwound 
+     * from the monthly buckets instead of read from the record documents.
+     * 
+     * @param from     inclusive lower bound of the record date, may be {@code null}
+     * @param to       exclusive upper bound of the record date, may be {@code null}
+     * @param timezone Olson timezone used to cut day/week/month buckets
+     * @return points in ascending date order
+     */
+    public List<ProgressionPoint> findProgression(
+        User user, Exercise exercise, Date from, Date to, Bucket bucket, String timezone
+    ) {
+        return findProgression(user, exercise, from, to, bucket, timezone, recordBuckets.isReadable());
+    }
+
+    /**
+     * Times {@link #findProgression} read from the record documents against
+     * the same series read from the buckets, and counts the points on which
+     * the two disagree. Run it after the bucket migration; the buckets are 
+     * read whether it completed or not.
+     *
+     * @param runs times each layout is read; the first run of each warms up
+     */
+    public Map<String, Long> compareProgression(
+        User user, Exercise exercise, Date from, Date to, Bucket bucket, String timezone, int runs
+    ) {
+        long[]                 documentNanos  = new long[runs];
+        long[]                 bucketNanos    = new long[runs];
+        List<ProgressionPoint> documentPoints = List.of();
+        List<ProgressionPoint> bucketPoints   = List.of();
+        for (int i = 0; i < runs; i++) {
+            long start       = System.nanoTime();
+            documentPoints   = findProgression(user, exercise, from, to, bucket, timezone, false);
+            documentNanos[i] = System.nanoTime() - start;
+
+            start          = System.nanoTime();
+            bucketPoints   = findProgression(user, exercise, from, to, bucket, timezone, true);
+            bucketNanos[i] = System.nanoTime() - start;
+        }
+
+        /** Points past the end of the shorter series count as mismatches */
+        long mismatched = Math.abs(documentPoints.size() - bucketPoints.size());
+        for (int i = 0; i < Math.min(documentPoints.size(), bucketPoints.size()); i++) {
+            if (!documentPoints.get(i).equals(bucketPoints.get(i))) mismatched++;
+        }
+
+        Map<String, Long> report = new LinkedHashMap<>();
+        report.put("documents.progressionPoints",       (long) documentPoints.size());
+        report.put("documents.progressionMedianMicros", Timing.medianMicros(documentNanos));
+        report.put("buckets.progressionPoints",         (long) bucketPoints.size());
+        report.put("buckets.progressionMedianMicros",   Timing.medianMicros(bucketNanos));
+        report.put("progressionMismatches",             mismatched);
+        return report;
+    }
+
+    private List<ProgressionPoint> findProgression(
+        User user, Exercise exercise, Date from, Date to, Bucket bucket, String timezone, boolean fromBuckets
+    ) {
+        Criteria criteria = Criteria.where("user").is(user).and("exercise").is(exercise);
+        /** Left out like they are left out of the buckets */
+        softDeletedField(ExerciseRecord.class).ifPresent(field -> criteria.and(field).ne(true));
+        if (from != null || to != null) {
+            Criteria dateCriteria = criteria.and("date");
+            if (from != null) dateCriteria.gte(from);
+            if (to   != null) dateCriteria.lt(to);
+        }
+
+        List<AggregationOperation> stages = new ArrayList<>();
+        if (fromBuckets) stages.addAll(recordBuckets.sessionStages(user, exercise, from, to));
+        else             stages.add(Aggregation.match(criteria));
+        stages.add(context -> new Document("$project", sessionStats()));
+        stages.add(context -> new Document("$addFields", new Document("topSetReps", topSetReps())));
+        if (bucket != Bucket.SESSION) {
+            stages.add(context -> new Document("$group", bucketGroup(bucket, timezone)));
+            stages.add(context -> new Document("$addFields", new Document("topSet", "$best.w").append("topSetReps", "$best.n")));
+            stages.add(context -> new Document("$sort", new Document("_id", 1)));
+        } else {
+            stages.add(context -> new Document("$sort", new Document("date", 1)));
+        }
+
+        List<Document> rows = fromBuckets
+            ? mongoTemplate.aggregate(Aggregation.newAggregation(stages), RecordBucketService.COLLECTION, Document.class).getMappedResults()
+            : mongoTemplate.aggregate(Aggregation.newAggregation(ExerciseRecord.class, stages), Document.class).getMappedResults();
+
+        List<ProgressionPoint> points = new ArrayList<>(rows.size());
+        for (Document row : rows) {
+            boolean isSession = bucket == Bucket.SESSION;
+            points.add(new ProgressionPoint(
+                isSession ? row.getDate("date") : row.getDate("_id"),
+                isSession ? 1 : number(row, "sessions").intValue(),
+                number(row, "setCount").intValue(),
+                number(row, "reps").intValue(),
+                number(row, "maxSetReps").intValue(),
+                number(row, "topSet").doubleValue(),
+                number(row, "topSetReps").intValue(),
+                number(row, "volume").doubleValue(),
+                number(row, "estimated1RM").doubleValue(),
+                isSession ? row.getString("note") : null
+            ));
+        }
+        return points;
+    }
+
+
+    /**
+     * Writes the records of a user to {@code out}, oldest first, straight 
+     * from a database cursor: only one batch of raw documents is held at a 
+     * time, whatever the size of the history. References are not resolved 
+     * per record; the names of every exercise the records point to are read
+     * once up front. Soft-deleted records are left out.
+     * 
+     * @param from inclusive lower bound of the record date, may be {@code null}
+     * @param to   exclusive upper bound of the record date, may be {@code null}
+     * @return number of records written
+     */
+    public long export(User user, Date from, Date to, ExportFormat format, OutputStream out) throws IOException {
+        Criteria criteria = Criteria.where("user").is(user);
+        softDeletedField(ExerciseRecord.class).ifPresent(field -> criteria.and(field).ne(true));
+        if (from != null || to != null) {
+            Criteria dateCriteria = criteria.and("date");
+            if (from != null) dateCriteria.gte(from);
+            if (to   != null) dateCriteria.lt(to);
+        }
+        MongoConverter converter  = mongoTemplate.getConverter();
+        Document       filter     = new QueryMapper(converter).getMappedObject(
+            new Query(criteria).getQueryObject(), converter.getMappingContext().getPersistentEntity(ExerciseRecord.class)
+        );
+        String         collection = mongoTemplate.getCollectionName(ExerciseRecord.class);
+
+        List<Object> exercises = new ArrayList<>();
+        mongoTemplate.getCollection(collection)
+            .aggregate(List.of(new Document("$match", filter), new Document("$group", new Document("_id", "$exercise"))))
+            .forEach(group -> exercises.add(group.get("_id")));
+        Map<String, String> exerciseNames = exerciseNames(exercises);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        if (format == ExportFormat.CSV) writer.write(CSV_HEADER + "\n");
+
+        long count = 0;
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(collection)
+                .find(filter)
+                .projection(Projections.exclude("user"))
+                .sort(new Document("date", 1).append("_id", 1))
+                .batchSize(EXPORT_BATCH_SIZE)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document     record   = cursor.next();
+                List<String> refs     = referencedIds(record.get("exercise"));
+                String       exercise = refs.isEmpty() ? null : exerciseNames.getOrDefault(refs.get(0), refs.get(0));
+
+                if (format == ExportFormat.CSV) writeCsv(writer, record, exercise);
+                else                            writeNdjson(writer, record, exercise);
+                /** Hand every full batch to the client instead of buffering the export */
+                if (++count % EXPORT_BATCH_SIZE == 0) writer.flush();
+            }
+        }
+        writer.flush();
+        return count;
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    /** {@code $map} over every set of a record. */
+    private static Document mapSets(Object in) {
+        return new Document("$map", new Document("input", new Document("$ifNull", List.of("$sets", List.of())))
+            .append("as", "s")
+            .append("in", in));
+    }
+
+    private static Document repsOfSet() {
+        return new Document("$ifNull", List.of("$$s.repetitions", List.of()));
+    }
+
+    /** Per-record statistics, computed from the raw sets. */
+    private static Document sessionStats() {
+        /** Epley on the heaviest weight of the set and the reps done at that weight */
+        Document epley = new Document("$let", new Document()
+            .append("vars", new Document("w", new Document("$max", repsOfSet())))
+            .append("in", new Document("$let", new Document()
+                .append("vars", new Document("n", new Document("$size", new Document("$filter", new Document()
+                    .append("input", repsOfSet())
+                    .append("as",    "r")
+                    .append("cond",  new Document("$gte", List.of("$$r", "$$w"))))))))
+                .append("in", new Document("$cond", List.of(
+                    new Document("$lte", List.of("$$n", 1)),
+                    "$$w",
+                    new Document("$multiply", List.of("$$w", new Document("$add", List.of(1, new Document("$divide", List.of("$$n", 30))))))
+                ))))));
+
+        return new Document()
+            .append("date",         1)
+            .append("note",         1)
+            .append("sets",         1)
+            .append("setCount",     new Document("$size", new Document("$ifNull", List.of("$sets", List.of()))))
+            .append("reps",         new Document("$sum", mapSets(new Document("$size", repsOfSet()))))
+            .append("maxSetReps",   new Document("$max", mapSets(new Document("$size", repsOfSet()))))
+            .append("topSet",       new Document("$max", mapSets(new Document("$max", repsOfSet()))))
+            .append("volume",       new Document("$sum", mapSets(new Document("$sum", repsOfSet()))))
+            .append("estimated1RM", new Document("$max", mapSets(epley)));
+    }
+
+    /** Reps at the top weight within the set which reached it; needs {@code topSet}. */
+    private static Document topSetReps() {
+        return new Document("$max", mapSets(new Document("$size", new Document("$filter", new Document()
+            .append("input", repsOfSet())
+            .append("as",    "r")
+            .append("cond",  new Document("$eq", List.of("$$r", "$topSet")))))));
+    }
+
+    private static Document bucketGroup(Bucket bucket, String timezone) {
+        Document dateTrunc = new Document("date", "$date")
+            .append("unit",     bucket.name().toLowerCase())
+            .append("timezone", timezone);
+        if (bucket == Bucket.WEEK) dateTrunc.append("startOfWeek", "monday");
+
+        return new Document("_id", new Document("$dateTrunc", dateTrunc))
+            .append("sessions",     new Document("$sum", 1))
+            .append("setCount",     new Document("$sum", "$setCount"))
+            .append("reps",         new Document("$sum", "$reps"))
+            .append("maxSetReps",   new Document("$max", "$maxSetReps"))
+            /** Documents compare field by field: the heaviest top set, then the most reps at it */
+            .append("best",         new Document("$max", new Document("w", "$topSet").append("n", "$topSetReps")))
+            .append("volume",       new Document("$sum", "$volume"))
+            .append("estimated1RM", new Document("$max", "$estimated1RM"));
+    }
+
+    private static Number number(Document row, String key) {
+        Object value = row.get(key);
+        return value instanceof Number ? (Number) value : 0;
+    }
+
+    /** Names of the given exercise references by id, in one query. */
+    private Map<String, String> exerciseNames(Collection<Object> references) {
+        Set<Object> ids = new HashSet<>();
+        for (String id : referencedIds(references)) ids.add(ObjectId.isValid(id) ? new ObjectId(id) : id);
+
+        Map<String, String> names = new HashMap<>();
+        if (ids.isEmpty()) return names;
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(Exercise.class))
+            .find(Filters.in("_id", ids))
+            .projection(Projections.include("name"))
+            .forEach(doc -> names.put(referencedIds(doc.get("_id")).get(0), doc.getString("name")));
+        return names;
+    }
+
+    /**
+     * One line in the shape of the body of {@code /add}, so the export can 
+     * be imported as is. Storage fields (id, revision, soft-delete flag) 
+     * are left out.
+     */
+    private void writeNdjson(Writer writer, Document record, String exercise) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("exerciseName", exercise);
+        line.put("datetime",     plain(record.get("date")));
+        line.put("sets",         plain(record.get("sets")));
+        line.put("note",         record.get("note"));
+        List<Object> location = locationArray(record.get("location"));
+        if (location != null) line.put("location", location);
+        writer.write(EXPORT_MAPPER.writeValueAsString(line));
+        writer.write("\n");
+    }
+
+    private static void writeCsv(Writer writer, Document record, String exercise) throws IOException {
+        String id   = referencedIds(record.get("_id")).get(0);
+        Object date = plain(record.get("date"));
+        String note = record.get("note") == null ? "" : record.get("note").toString();
+
+        List<?> sets = record.get("sets") instanceof List ? (List<?>) record.get("sets") : List.of();
+        for (int i = 0; i < Math.max(sets.size(), 1); i++) {
+            List<?> weights = List.of();
+            if (i < sets.size() && sets.get(i) instanceof Document) {
+                Object repetitions = ((Document) sets.get(i)).get("repetitions");
+                if (repetitions instanceof List) weights = (List<?>) repetitions;
+            }
+            writer.write(String.join(",",
+                csv(id),
+                csv(date == null ? "" : date.toString()),
+                csv(exercise == null ? "" : exercise),
+                sets.isEmpty() ? "" : String.valueOf(i + 1),
+                String.valueOf(weights.size()),
+                csv(weights.stream().map(String::valueOf).collect(Collectors.joining(" "))),
+                csv(note)
+            ));
+            writer.write("\n");
+        }
+    }
+
+    /**
+     * A stored location as the array {@code /add} takes: its values in the
+     * order of the {@link Location} constructor, or in declaration order if
+     * the constructor parameters are not known.
+     */
+    private List<Object> locationArray(Object stored) {
+        if (!(stored instanceof Document)) return null;
+        Document                                         location = (Document) stored;
+        MongoPersistentEntity<?>                         entity   = mongoTemplate.getConverter()
+            .getMappingContext().getRequiredPersistentEntity(Location.class);
+        InstanceCreatorMetadata<MongoPersistentProperty> creator  = entity.getInstanceCreatorMetadata();
+
+        List<Object> values = new ArrayList<>();
+        if (creator != null && creator.hasParameters()
+                && creator.getParameters().stream().allMatch(parameter -> parameter.getName() != null)) {
+            for (Parameter<Object, MongoPersistentProperty> parameter : creator.getParameters()) {
+                MongoPersistentProperty property = entity.getRequiredPersistentProperty(parameter.getName());
+                values.add(plain(location.get(property.getFieldName())));
+            }
+        } else {
+            entity.forEach(property -> values.add(plain(location.get(property.getFieldName()))));
+        }
+        return values;
+    }
+
+    /** Quotes a CSV value when it holds a separator, a quote or a line break. */
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+            return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /** BSON values as plain JSON: ids as hex strings, dates as ISO instants. */
+    private static Object plain(Object value) {
+        if (value instanceof ObjectId) return ((ObjectId) value).toHexString();
+        if (value instanceof DBRef)    return plain(((DBRef) value).getId());
+        if (value instanceof Date)     return ((Date) value).toInstant().toString();
+        if (value instanceof Document) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            ((Document) value).forEach((key, item) -> map.put(key, plain(item)));
+            return map;
+        }
+        if (value instanceof List) {
+            return ((List<?>) value).stream().map(ExerciseRecordService::plain).collect(Collectors.toList());
+        }
+        return value;
+    }
 }
@@ -1,13 +1,42 @@
 package com.thirteenseven.workoutdiary.service;
 
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ~~~~~~~~ Mongo ~~~~~~~~
+import org.bson.Document;
+
+// ~~~~~~~~ Spring ~~~~~~~~
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.TextIndexDefinition;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.model.Exercise;
 import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
 
+import jakarta.annotation.PostConstruct;
+
 @Service
 public class ExerciseService extends BaseDocumentService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExerciseService.class);
+
+    /** Relevance weights of the text index: a hit in the name counts ten times one in the description */
+    public static final float NAME_WEIGHT        = 10f;
+    public static final float DESCRIPTION_WEIGHT = 1f;
     
     @Autowired
     private MongoTemplate mongoTemplate;
@@ -16,5 +45,66 @@ public class ExerciseService extends BaseDocumentService {
     protected MongoTemplate getMongoTemplate() {
         return mongoTemplate;
     }
-    
+
+    /** Text index backing the {@code TEXT} mode of the exercise search. */
+    @PostConstruct
+    public void ensureIndexes() {
+        try {
+            mongoTemplate.indexOps(Exercise.class).ensureIndex(
+                TextIndexDefinition.builder()
+                    .onField("name",        NAME_WEIGHT)
+                    .onField("description", DESCRIPTION_WEIGHT)
+                    .named("name_description_text")
+                    .build()
+            );
+        } catch (RuntimeException e) {
+            /** A collection has at most one text index; keep running on an older definition */
+            logger.warn("Could not create the exercise text index: " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Counts the exercises matching the filters of {@code query} per value 
+     * of each field, in one {@code $facet} aggregation. Array fields are 
+     * unwound, so an exercise counts once for each of its muscle groups.
+     *
+     * @param fields reference fields to count (e.g. {@code muscleGroups})
+     * @return per field, the number of matching exercises by referenced id
+     */
+    public Map<String, Map<String, Long>> countFacets(Query query, Collection<String> fields) {
+        MongoConverter converter = mongoTemplate.getConverter();
+        Document       filter    = new QueryMapper(converter).getMappedObject(
+            query.getQueryObject(), converter.getMappingContext().getPersistentEntity(Exercise.class)
+        );
+
+        Document facets = new Document();
+        for (String field : fields) {
+            facets.append(field, List.of(
+                new Document("$unwind", "$" + field),
+                new Document("$group", new Document("_id", "$" + field).append("count", new Document("$sum", 1)))
+            ));
+        }
+
+        List<Document> pipeline = new ArrayList<>();
+        if (!filter.isEmpty()) pipeline.add(new Document("$match", filter));
+        pipeline.add(new Document("$facet", facets));
+        Document result = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Exercise.class))
+            .aggregate(pipeline)
+            .first();
+
+        Map<String, Map<String, Long>> counts = new LinkedHashMap<>();
+        for (String field : fields) {
+            Map<String, Long> byId = new HashMap<>();
+            if (result != null) {
+                for (Document bucket : result.getList(field, Document.class, List.of())) {
+                    long count = ((Number) bucket.get("count")).longValue();
+                    /** Embedded copies of one reference may differ; merge them by id */
+                    for (String id : referencedIds(bucket.get("_id"))) byId.merge(id, count, Long::sum);
+                }
+            }
+            counts.put(field, byId);
+        }
+        return counts;
+    }
 }
@@ -0,0 +1,225 @@
+package com.thirteenseven.workoutdiary.service;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ~~~~~~~~ Mongo ~~~~~~~~
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.bson.types.Binary;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+
+
+/**
+ * Remembers the responses of requests sent with an {@code Idempotency-Key},
+ * so a retried request gets the original response instead of writing again.
+ * <p>
+ * A key is claimed (stored as {@link State#PENDING}) before the request
+ * runs, so concurrent retries see it in progress, and completed with the
+ * response afterwards. Completed responses live in two tiers:
+ * <ul>
+ * <li>a bounded in-memory window of the most recent keys
+ * ({@code WorkoutDiary.app.idempotency.windowSize});</li>
+ * <li>the {@value #COLLECTION} collection, whose TTL index drops keys after
+ * {@code WorkoutDiary.app.idempotency.ttlHours}; it survives restarts and
+ * is shared by every instance.</li>
+ * </ul>
+ */
+@Service
+public class IdempotencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyService.class);
+
+    public static final String COLLECTION = "idempotencyKeys";
+
+    @Value("${WorkoutDiary.app.idempotency.windowSize:10000}")
+    private int  windowSize;
+    @Value("${WorkoutDiary.app.idempotency.ttlHours:24}")
+    private long ttlHours;
+    /** A claim older than this is taken to belong to a request which died */
+    @Value("${WorkoutDiary.app.idempotency.pendingTimeoutSeconds:60}")
+    private long pendingTimeoutSeconds;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private Map<String, Stored> window;
+
+    // ~~~~~~~~ metrics ~~~~~~~~
+    private final LongAdder replays   = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder claims    = new LongAdder();
+
+
+    public enum State { PENDING, DONE }
+
+    /** A claimed key, with the response once the request has completed. */
+    @Getter
+    @AllArgsConstructor
+    public static final class Stored {
+        private final State  state;
+        /** Digest of the request body the key was first used with */
+        private final String requestHash;
+        private final int    status;
+        private final String contentType;
+        private final byte[] body;
+        private final Date   createdAt;
+    }
+
+
+    @PostConstruct
+    public void init() {
+        window = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Stored> eldest) {
+                return size() > windowSize;
+            }
+        });
+        mongoTemplate.indexOps(COLLECTION).ensureIndex(
+            new Index().on("createdAt", Sort.Direction.ASC).expire(Duration.ofHours(ttlHours)).named("createdAt_ttl")
+        );
+    }
+
+
+    // =======================================================================
+    // Public
+    // =======================================================================
+    /**
+     * Claims {@code scope} for the current request.
+     *
+     * @param scope key of the client, prefixed with the user and endpoint
+     * @return {@code null} if the caller now owns the key and must run the
+     *         request; otherwise the existing claim, either completed (replay
+     *         its response) or still {@link State#PENDING}
+     */
+    public Stored claim(String scope, String requestHash) {
+        Stored cached = window.get(scope);
+        if (cached != null && !isExpired(cached)) return replayed(cached);
+
+        Date now = new Date();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                collection().insertOne(new Document("_id", scope)
+                    .append("state",       State.PENDING.name())
+                    .append("requestHash", requestHash)
+                    .append("createdAt",   now));
+                claims.increment();
+                return null;
+            } catch (MongoWriteException e) {
+                if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) throw e;
+            }
+
+            Document doc = collection().find(Filters.eq("_id", scope)).first();
+            if (doc == null) continue; // expired in between; claim again
+            Stored stored = fromDocument(doc);
+            if (stored.getState() == State.DONE) {
+                window.put(scope, stored);
+                return replayed(stored);
+            }
+            if (now.getTime() - stored.getCreatedAt().getTime() < pendingTimeoutSeconds * 1000) {
+                conflicts.increment();
+                return stored;
+            }
+            /** The owner died before completing; take the key over */
+            logger.warn("Taking over an abandoned idempotency key");
+            collection().deleteOne(Filters.and(Filters.eq("_id", scope), Filters.eq("state", State.PENDING.name())));
+        }
+        conflicts.increment();
+        return new Stored(State.PENDING, requestHash, 0, null, null, now);
+    }
+
+    /** Stores the response of a request which owns {@code scope}. */
+    public void complete(String scope, String requestHash, int status, String contentType, byte[] body) {
+        Date   now    = new Date();
+        Stored stored = new Stored(State.DONE, requestHash, status, contentType, body, now);
+        collection().updateOne(Filters.eq("_id", scope), Updates.combine(
+            Updates.set("state",       State.DONE.name()),
+            Updates.set("requestHash", requestHash),
+            Updates.set("status",      status),
+            Updates.set("contentType", contentType),
+            Updates.set("body",        new Binary(body)),
+            Updates.set("createdAt",   now)
+        ));
+        window.put(scope, stored);
+    }
+
+    /** Gives up a claim, e.g. after a failed request, so a retry can run. */
+    public void release(String scope) {
+        window.remove(scope);
+        collection().deleteOne(Filters.and(Filters.eq("_id", scope), Filters.eq("state", State.PENDING.name())));
+    }
+
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("windowSize", (long) window.size());
+        stats.put("claims",     claims.sum());
+        stats.put("replays",    replays.sum());
+        stats.put("conflicts",  conflicts.sum());
+        return stats;
+    }
+
+    /** Digest of a request body, to tell a retry from a reused key. */
+    public static String hash(byte[] body) {
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM ships SHA-256
+        }
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    private MongoCollection<Document> collection() {
+        return mongoTemplate.getCollection(COLLECTION);
+    }
+
+    private Stored replayed(Stored stored) {
+        replays.increment();
+        return stored;
+    }
+
+    private boolean isExpired(Stored stored) {
+        return System.currentTimeMillis() - stored.getCreatedAt().getTime() > Duration.ofHours(ttlHours).toMillis();
+    }
+
+    private static Stored fromDocument(Document doc) {
+        Binary body = doc.get("body", Binary.class);
+        return new Stored(
+            State.valueOf(doc.getString("state")),
+            doc.getString("requestHash"),
+            doc.getInteger("status", 0),
+            doc.getString("contentType"),
+            body == null ? null : body.getData(),
+            doc.getDate("createdAt")
+        );
+    }
+}
@@ -0,0 +1,103 @@
+package com.thirteenseven.workoutdiary.service;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// ~~~~~~~~ Mongo ~~~~~~~~
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.stereotype.Service;
+
+
+/**
+ * Counts the commands (round trips) the app sends to MongoDB: in total per
+ * command name, and per endpoint, so the cost of a request can be read as
+ * a number of round trips, e.g. for the bulk write endpoints.
+ * <p>
+ * Registered on the client by {@code MongoConfig}. The sync driver runs
+ * the listener on the thread that sends the command, so a request thread
+ * sees exactly its own commands between {@link #startRequest()} and
+ * {@link #endRequest}. Commands of background jobs only count in total.
+ */
+@Service
+public class MongoCommandStats implements CommandListener {
+
+    /** Distinct endpoints kept; later ones only count in total */
+    private static final int MAX_ENDPOINTS = 500;
+
+    private final Map<String, LongAdder> commands  = new ConcurrentHashMap<>();
+    private final Map<String, Endpoint>  endpoints = new ConcurrentHashMap<>();
+    /** Commands sent by the current request thread, {@code null} outside a request */
+    private final ThreadLocal<long[]>    current   = new ThreadLocal<>();
+
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        commands.computeIfAbsent(event.getCommandName(), name -> new LongAdder()).increment();
+        long[] count = current.get();
+        if (count != null) count[0]++;
+    }
+
+
+    // =======================================================================
+    // Requests
+    // =======================================================================
+    public void startRequest() {
+        current.set(new long[1]);
+    }
+
+    /**
+     * Books the commands sent since {@link #startRequest()} on an endpoint.
+     *
+     * @param endpoint method and path pattern, e.g. {@code DELETE /api/v1/exercise/deleteByIds}
+     */
+    public void endRequest(String endpoint) {
+        long[] count = current.get();
+        current.remove();
+        if (count == null) return;
+        Endpoint stats = endpoints.size() < MAX_ENDPOINTS
+            ? endpoints.computeIfAbsent(endpoint, key -> new Endpoint())
+            : endpoints.get(endpoint);
+        if (stats == null) return;
+        stats.requests.increment();
+        stats.commands.add(count[0]);
+        stats.maxCommands.accumulateAndGet(count[0], Math::max);
+    }
+
+
+    // =======================================================================
+    // Metrics
+    // =======================================================================
+    /**
+     * {@code command.<name>} totals, then per endpoint {@code <endpoint>.requests},
+     * {@code .avgCommands} and {@code .maxCommands}, sorted by name.
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        new TreeMap<>(commands).forEach((name, count) -> stats.put("command." + name, count.sum()));
+        new TreeMap<>(endpoints).forEach((endpoint, endpointStats) -> {
+            long requests = endpointStats.requests.sum();
+            stats.put(endpoint + ".requests",    requests);
+            stats.put(endpoint + ".avgCommands", requests == 0 ? 0 : endpointStats.commands.sum() / requests);
+            stats.put(endpoint + ".maxCommands", endpointStats.maxCommands.get());
+        });
+        return stats;
+    }
+
+
+
+
+    /** Counters of one endpoint. */
+    private static final class Endpoint {
+        final LongAdder  requests    = new LongAdder();
+        final LongAdder  commands    = new LongAdder();
+        final AtomicLong maxCommands = new AtomicLong();
+    }
+}
@@ -0,0 +1,460 @@
+package com.thirteenseven.workoutdiary.service;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ~~~~~~~~ Mongo ~~~~~~~~
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.model.Exercise;
+import com.thirteenseven.workoutdiary.model.ExerciseRecord;
+import com.thirteenseven.workoutdiary.model.User;
+import com.thirteenseven.workoutdiary.service.BackgroundJobService.Job;
+import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
+import com.thirteenseven.workoutdiary.utilities.Timing;
+
+import jakarta.annotation.PostConstruct;
+
+
+/**
+ * The bucket layout of the exercise records: one document per user,
+ * exercise and month holding the sessions of that month in an array,
+ * instead of one document (and one entry per index) per session.
+ * <p>
+ * A session keeps the fields of its record except the references, which
+ * the bucket holds once. The record collection stays the source of truth;
+ * with {@code WorkoutDiary.app.recordStorage.mode=BUCKETS} every record
+ * write is mirrored into the buckets and, once {@link #migrate} has run 
+ * to the end, the progression series is read from them. Until then reads
+ * stay on the record documents. Starting in another mode marks the 
+ * migration as incomplete again, since writes made meanwhile are not 
+ * mirrored.
+ *
+ * @note
+ * Months are cut in UTC, like the rollups.
+ */
+@Service
+public class RecordBucketService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecordBucketService.class);
+
+    public  static final String COLLECTION        = "exerciseRecordBuckets";
+    /** Holds the single migration state document */
+    private static final String STATE_COLLECTION  = "exerciseRecordBucketState";
+    private static final String MIGRATION         = "migration";
+    private static final ZoneId ZONE              = ZoneOffset.UTC;
+    /** Records read per cursor round trip of a migration */
+    private static final int    READ_BATCH_SIZE   = 1000;
+    /** Buckets per bulk write of a migration */
+    private static final int    WRITE_BATCH_SIZE  = 100;
+    /** Record fields a session does not repeat */
+    private static final List<String> BUCKET_FIELDS = List.of("user", "exercise", "_class");
+
+    /** Where the record reads are served from. */
+    public enum StorageMode { DOCUMENTS, BUCKETS }
+
+    @Value("${WorkoutDiary.app.recordStorage.mode:DOCUMENTS}")
+    private StorageMode mode;
+
+    @Autowired
+    private MongoTemplate        mongoTemplate;
+    @Autowired
+    private BackgroundJobService backgroundJobs;
+
+    /** Whether a migration ran to the end; cached from {@link #STATE_COLLECTION} */
+    private volatile boolean     migrated;
+
+
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps(COLLECTION).ensureIndex(
+            new Index()
+                .on("user",     Sort.Direction.ASC)
+                .on("exercise", Sort.Direction.ASC)
+                .on("month",    Sort.Direction.ASC)
+                .named("user_exercise_month")
+        );
+        Document state = mongoTemplate.getCollection(STATE_COLLECTION).find(Filters.eq("_id", MIGRATION)).first();
+        migrated = state != null && Boolean.TRUE.equals(state.getBoolean("complete"));
+        if (migrated && !isEnabled()) {
+            /** Writes are not mirrored in this mode, so the buckets fall behind; switching back needs a new migration */
+            logger.info("Record storage mode is " + mode + "; the bucket migration has to run again before buckets are read");
+            setMigrated(false);
+        }
+    }
+
+    /** Whether record writes are mirrored into the buckets. */
+    public boolean isEnabled() {
+        return mode == StorageMode.BUCKETS;
+    }
+
+    /**
+     * Whether reads are served from the buckets: the mode is on and a 
+     * migration has completed, so the buckets hold every record.
+     */
+    public boolean isReadable() {
+        return isEnabled() && migrated;
+    }
+
+
+    // =======================================================================
+    // Incremental maintenance
+    //
+    // No-ops unless the bucket mode is on
+    // =======================================================================
+    public void add(ExerciseRecord record) {
+        add(List.of(record));
+    }
+
+    public void add(Collection<ExerciseRecord> records) {
+        if (!isEnabled() || records.isEmpty()) return;
+        List<Document> raws = new ArrayList<>(records.size());
+        for (ExerciseRecord record : records) {
+            if (record == null) continue;
+            Document raw = new Document();
+            mongoTemplate.getConverter().write(record, raw);
+            raws.add(raw);
+        }
+        addDocuments(raws);
+    }
+
+    /** Raw record documents just written, e.g. by the group commit. */
+    public void addDocuments(Collection<Document> records) {
+        if (!isEnabled() || records.isEmpty()) return;
+
+        /** Sessions grouped by bucket, so a bucket gets one $push per call */
+        Map<String, Bucket> buckets = new LinkedHashMap<>();
+        for (Document record : records) {
+            String user     = firstId(record.get("user"));
+            String exercise = firstId(record.get("exercise"));
+            Date   date     = record.getDate("date");
+            if (user == null || exercise == null || date == null) continue;
+            buckets.computeIfAbsent(key(user, exercise, date), id -> new Bucket(user, exercise, monthOf(date)))
+                .sessions.add(toSession(record));
+        }
+        if (buckets.isEmpty()) return;
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION);
+        buckets.forEach((id, bucket) -> bulk.upsert(Query.query(Criteria.where("_id").is(id)), bucket.push()));
+        bulk.execute();
+    }
+
+    public void remove(Collection<ExerciseRecord> records) {
+        if (!isEnabled() || records.isEmpty()) return;
+
+        Map<String, List<Object>> idsByBucket = new LinkedHashMap<>();
+        for (ExerciseRecord record : records) {
+            if (record == null) continue;
+            Document raw = new Document();
+            mongoTemplate.getConverter().write(record, raw);
+            /** Same keys as addDocuments: a record without them was never bucketed */
+            String user     = firstId(raw.get("user"));
+            String exercise = firstId(raw.get("exercise"));
+            Date   date     = raw.getDate("date");
+            if (user == null || exercise == null || date == null) continue;
+            idsByBucket.computeIfAbsent(key(user, exercise, date), id -> new ArrayList<>()).add(raw.get("_id"));
+        }
+        if (idsByBucket.isEmpty()) return;
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION);
+        idsByBucket.forEach((id, sessionIds) -> bulk.updateOne(
+            Query.query(Criteria.where("_id").is(id)),
+            new Update().pull("sessions", Query.query(Criteria.where("_id").in(sessionIds)).getQueryObject())
+        ));
+        bulk.execute();
+        mongoTemplate.remove(
+            Query.query(Criteria.where("_id").in(idsByBucket.keySet()).and("sessions").size(0)), COLLECTION
+        );
+    }
+
+    /** An updated record: {@code before} is taken out, {@code after} put in. */
+    public void replace(ExerciseRecord before, ExerciseRecord after) {
+        if (before != null) remove(List.of(before));
+        if (after  != null) add(List.of(after));
+    }
+
+    /** Drops every bucket, e.g. after all records have been deleted. */
+    public void clear() {
+        mongoTemplate.remove(new Query(), COLLECTION);
+    }
+
+
+    // =======================================================================
+    // Reads
+    // =======================================================================
+    /**
+     * Aggregation stages turning the buckets of one user and exercise into
+     * the sessions between {@code from} and {@code to}, shaped like record
+     * documents without their references. Runs on {@link #COLLECTION}.
+     *
+     * @param from inclusive lower bound of the session date, may be {@code null}
+     * @param to   exclusive upper bound of the session date, may be {@code null}
+     */
+    public List<AggregationOperation> sessionStages(User user, Exercise exercise, Date from, Date to) {
+        Document bucketMatch = new Document("user", user.getId()).append("exercise", exercise.getId());
+        Document monthRange  = new Document();
+        if (from != null) monthRange.append("$gte", monthOf(from));
+        if (to   != null) monthRange.append("$lt",  to);
+        if (!monthRange.isEmpty()) bucketMatch.append("month", monthRange);
+
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(context -> new Document("$match",       bucketMatch));
+        stages.add(context -> new Document("$unwind",      "$sessions"));
+        stages.add(context -> new Document("$replaceRoot", new Document("newRoot", "$sessions")));
+        Document dateRange = new Document();
+        if (from != null) dateRange.append("$gte", from);
+        if (to   != null) dateRange.append("$lt",  to);
+        if (!dateRange.isEmpty()) stages.add(context -> new Document("$match", new Document("date", dateRange)));
+        return stages;
+    }
+
+
+    // =======================================================================
+    // Migration
+    // =======================================================================
+    /**
+     * Rebuilds every bucket from the record collection in a background job.
+     * Records are read in {@code user_exercise_date} order, so each bucket
+     * is complete once the cursor moves past it and memory holds only the
+     * buckets of the current write batch. Soft-deleted records are left out.
+     * <p>
+     * Buckets are written with upserts which first pull the sessions they 
+     * push, so mirrored writes landing meanwhile are neither lost nor 
+     * duplicated. Reads move to the buckets only once the job has run to 
+     * the end; a failed or cancelled migration leaves them on the records.
+     *
+     * @return the job, whose processed count is the number of records read
+     * @note
+     * A record deleted after the cursor has read it can come back into its
+     * bucket; run the migration while the app is quiet, like the rollup 
+     * rebuild.
+     */
+    public Job migrate() {
+        return backgroundJobs.submit("migrate " + COLLECTION, job -> {
+            setMigrated(false);
+            clear();
+            Map<String, Bucket> batch   = new LinkedHashMap<>();
+            String              current = null;
+            Bucket              bucket  = null;
+            long                written = 0;
+
+            try (MongoCursor<Document> cursor = recordCollection()
+                    .find(BaseDocumentService.notSoftDeleted(mongoTemplate, ExerciseRecord.class))
+                    .sort(new Document("user", 1).append("exercise", 1).append("date", 1))
+                    .hint(new Document("user", 1).append("exercise", 1).append("date", 1))
+                    .batchSize(READ_BATCH_SIZE)
+                    .iterator()) {
+                while (cursor.hasNext() && !job.isCancelled()) {
+                    Document record   = cursor.next();
+                    String   user     = firstId(record.get("user"));
+                    String   exercise = firstId(record.get("exercise"));
+                    Date     date     = record.getDate("date");
+                    if (user == null || exercise == null || date == null) continue;
+
+                    String key = key(user, exercise, date);
+                    if (!key.equals(current)) {
+                        if (bucket != null) batch.put(current, bucket);
+                        if (batch.size() == WRITE_BATCH_SIZE) {
+                            written += writeMigrated(batch);
+                        }
+                        current = key;
+                        bucket  = new Bucket(user, exercise, monthOf(date));
+                    }
+                    bucket.sessions.add(toSession(record));
+                    job.addProcessed(1);
+                }
+            }
+            if (job.isCancelled()) return;
+            if (bucket != null) batch.put(current, bucket);
+            written += writeMigrated(batch);
+            setMigrated(true);
+            logger.info("Migrated " + job.getProcessed() + " record(s) into " + written + " bucket(s)");
+        });
+    }
+
+
+    // =======================================================================
+    // Comparison
+    // =======================================================================
+    /**
+     * Compares the two layouts: documents, storage and index bytes of each
+     * collection, and the median latency of reading the sessions of one
+     * user and exercise between {@code from} and {@code to}.
+     *
+     * @param runs times each range query is run; the first run of each warms up
+     */
+    public Map<String, Long> compare(User user, Exercise exercise, Date from, Date to, int runs) {
+        Map<String, Long> report = new LinkedHashMap<>();
+        putCollectionStats(report, "documents", mongoTemplate.getCollectionName(ExerciseRecord.class));
+        putCollectionStats(report, "buckets",   COLLECTION);
+
+        /** References are mapped the way the record queries map them */
+        MongoPersistentEntity<?> entity       = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(ExerciseRecord.class);
+        Document                 recordFilter = new QueryMapper(mongoTemplate.getConverter()).getMappedObject(
+            Query.query(Criteria.where("user").is(user).and("exercise").is(exercise)).getQueryObject(), entity
+        );
+        /** Soft-deleted records are not in the buckets either */
+        Bson recordRange = Filters.and(
+            recordFilter, dateRange(from, to), BaseDocumentService.notSoftDeleted(mongoTemplate, ExerciseRecord.class)
+        );
+
+        List<Document> bucketPipeline = new ArrayList<>();
+        for (AggregationOperation stage : sessionStages(user, exercise, from, to)) {
+            bucketPipeline.addAll(stage.toPipelineStages(Aggregation.DEFAULT_CONTEXT));
+        }
+
+        long[] documentNanos = new long[runs];
+        long[] bucketNanos   = new long[runs];
+        long   documentRows  = 0, bucketRows = 0;
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            documentRows     = recordCollection().find(recordRange).into(new ArrayList<>()).size();
+            documentNanos[i] = System.nanoTime() - start;
+
+            start          = System.nanoTime();
+            bucketRows     = mongoTemplate.getCollection(COLLECTION).aggregate(bucketPipeline).into(new ArrayList<>()).size();
+            bucketNanos[i] = System.nanoTime() - start;
+        }
+        report.put("documents.rangeRows",         documentRows);
+        report.put("documents.rangeMedianMicros", Timing.medianMicros(documentNanos));
+        report.put("buckets.rangeRows",           bucketRows);
+        report.put("buckets.rangeMedianMicros",   Timing.medianMicros(bucketNanos));
+        return report;
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    /** Writes migrated buckets, replacing sessions a mirrored write already pushed. */
+    private int writeMigrated(Map<String, Bucket> batch) {
+        if (batch.isEmpty()) return 0;
+        /** Ordered: the pull of a bucket has to land before its push */
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, COLLECTION);
+        batch.forEach((id, bucket) -> {
+            List<Object> sessionIds = new ArrayList<>(bucket.sessions.size());
+            bucket.sessions.forEach(session -> sessionIds.add(session.get("_id")));
+            Query query = Query.query(Criteria.where("_id").is(id));
+            bulk.updateOne(query, new Update().pull("sessions", Query.query(Criteria.where("_id").in(sessionIds)).getQueryObject()));
+            bulk.upsert(query, bucket.push());
+        });
+        bulk.execute();
+        int written = batch.size();
+        batch.clear();
+        return written;
+    }
+
+    private void setMigrated(boolean complete) {
+        mongoTemplate.getCollection(STATE_COLLECTION).updateOne(
+            Filters.eq("_id", MIGRATION),
+            new Document("$set", new Document("complete", complete).append("updatedAt", new Date())),
+            new UpdateOptions().upsert(true)
+        );
+        migrated = complete;
+    }
+
+    private MongoCollection<Document> recordCollection() {
+        return mongoTemplate.getCollection(mongoTemplate.getCollectionName(ExerciseRecord.class));
+    }
+
+    private static String key(String user, String exercise, Date date) {
+        return String.join(":", user, exercise, YearMonth.from(date.toInstant().atZone(ZONE)).toString());
+    }
+
+    private static Date monthOf(Date date) {
+        YearMonth month = YearMonth.from(date.toInstant().atZone(ZONE));
+        return Date.from(month.atDay(1).atStartOfDay(ZONE).toInstant());
+    }
+
+    /** A record document without the fields its bucket already holds. */
+    private Document toSession(Document record) {
+        Document session = new Document(record);
+        BUCKET_FIELDS.forEach(session::remove);
+        BaseDocumentService.softDeletedField(mongoTemplate, ExerciseRecord.class).ifPresent(session::remove);
+        return session;
+    }
+
+    private static String firstId(Object reference) {
+        List<String> ids = BaseDocumentService.referencedIds(reference);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    private static Bson dateRange(Date from, Date to) {
+        List<Bson> bounds = new ArrayList<>(2);
+        if (from != null) bounds.add(Filters.gte("date", from));
+        if (to   != null) bounds.add(Filters.lt("date",  to));
+        return bounds.isEmpty() ? new Document() : Filters.and(bounds);
+    }
+
+    private void putCollectionStats(Map<String, Long> report, String prefix, String collection) {
+        Document stats = mongoTemplate.executeCommand(new Document("collStats", collection));
+        report.put(prefix + ".count",          number(stats, "count"));
+        report.put(prefix + ".storageBytes",   number(stats, "storageSize"));
+        report.put(prefix + ".indexBytes",     number(stats, "totalIndexSize"));
+        report.put(prefix + ".avgObjectBytes", number(stats, "avgObjSize"));
+    }
+
+    private static long number(Document doc, String key) {
+        Object value = doc.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+
+
+
+    /** A bucket being filled, before it is written. */
+    private static final class Bucket {
+        final String         user;
+        final String         exercise;
+        final Date           month;
+        final List<Document> sessions = new ArrayList<>();
+
+        Bucket(String user, String exercise, Date month) {
+            this.user     = user;
+            this.exercise = exercise;
+            this.month    = month;
+        }
+
+        /** Upsert of the bucket appending its sessions. */
+        Update push() {
+            return new Update()
+                .setOnInsert("user",     user)
+                .setOnInsert("exercise", exercise)
+                .setOnInsert("month",    month)
+                .push("sessions").each(sessions.toArray());
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.thirteenseven.workoutdiary.service;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ~~~~~~~~ Mongo ~~~~~~~~
+import com.mongodb.DBRef;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.model.Exercise;
+import com.thirteenseven.workoutdiary.model.ExerciseRecord;
+import com.thirteenseven.workoutdiary.model.User;
+import com.thirteenseven.workoutdiary.model.base.RepetitionsModel;
+import com.thirteenseven.workoutdiary.payload.response.RollupBucket;
+import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
+
+import jakarta.annotation.PostConstruct;
+
+
+/**
+ * Daily and weekly totals (sessions, sets, reps, volume) per user and 
+ * exercise, kept in their own collection so dashboards read O(buckets) 
+ * documents instead of every raw {@link ExerciseRecord}.
+ * <p>
+ * The totals are maintained incrementally: every record write applies its 
+ * contribution with {@code $inc} upserts, removals apply it negated. 
+ * {@link #rebuild} recomputes everything from the raw records and reports 
+ * how far the stored totals had drifted.
+ *
+ * @note
+ * Days and weeks are cut in UTC; weeks start on Monday, like the 
+ * progression buckets.
+ */
+@Service
+public class RecordRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecordRollupService.class);
+
+    public  static final String COLLECTION = "exerciseRecordRollups";
+    private static final ZoneId ZONE       = ZoneOffset.UTC;
+    private static final int    BATCH_SIZE = 1000;
+
+    /** Bucket size of a rollup. */
+    public enum Period { DAY, WEEK }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    /** Records left out because they have no user, exercise or date, so no bucket */
+    private final LongAdder skippedRecords = new LongAdder();
+
+
+    @PostConstruct
+    public void ensureIndexes() {
+        mongoTemplate.indexOps(COLLECTION).ensureIndex(
+            new Index()
+                .on("user",     Sort.Direction.ASC)
+                .on("period",   Sort.Direction.ASC)
+                .on("exercise", Sort.Direction.ASC)
+                .on("start",    Sort.Direction.ASC)
+                .named("user_period_exercise_start")
+        );
+    }
+
+
+    // =======================================================================
+    // Incremental maintenance
+    // =======================================================================
+    public void add(ExerciseRecord record) {
+        apply(List.of(record), 1);
+    }
+
+    public void add(Collection<ExerciseRecord> records) {
+        apply(records, 1);
+    }
+
+    public void remove(Collection<ExerciseRecord> records) {
+        apply(records, -1);
+    }
+
+    /** Raw record documents just written, e.g. by the group commit. */
+    public void addDocuments(Collection<Document> records) {
+        Map<String, Totals> deltas = new HashMap<>();
+        for (Document record : records) {
+            if (!accumulate(deltas, toKeyedTotals(record), 1)) skip(record.get("_id"));
+        }
+        write(deltas);
+    }
+
+    /** An updated record: {@code before} is taken out, {@code after} put in. */
+    public void replace(ExerciseRecord before, ExerciseRecord after) {
+        Map<String, Totals> deltas = new HashMap<>();
+        if (before != null && !accumulate(deltas, toKeyedTotals(before), -1)) skip(before.getId());
+        if (after  != null && !accumulate(deltas, toKeyedTotals(after),   1)) skip(after.getId());
+        write(deltas);
+    }
+
+    /** Drops every rollup, e.g. after all records have been deleted. */
+    public void clear() {
+        mongoTemplate.remove(new Query(), COLLECTION);
+    }
+
+
+    // =======================================================================
+    // Reads
+    // =======================================================================
+    /**
+     * Buckets of a user in ascending order.
+     * 
+     * @param exercise only this exercise; {@code null} sums up all exercises per bucket
+     * @param from     inclusive bucket start, may be {@code null}
+     * @param to       exclusive bucket start, may be {@code null}
+     */
+    public List<RollupBucket> find(User user, Exercise exercise, Period period, Date from, Date to) {
+        Criteria criteria = Criteria.where("user").is(user.getId()).and("period").is(period.name());
+        if (exercise != null) criteria.and("exercise").is(exercise.getId());
+        if (from != null || to != null) {
+            Criteria startCriteria = criteria.and("start");
+            if (from != null) startCriteria.gte(from);
+            if (to   != null) startCriteria.lt(to);
+        }
+        Query query = Query.query(criteria).with(Sort.by(Sort.Direction.ASC, "start"));
+
+        Map<Date, RollupBucket> buckets = new TreeMap<>();
+        for (Document doc : mongoTemplate.find(query, Document.class, COLLECTION)) {
+            Date         start = doc.getDate("start");
+            RollupBucket prev  = buckets.get(start);
+            buckets.put(start, new RollupBucket(
+                start,
+                exercise == null ? null : doc.getString("exercise"),
+                (prev == null ? 0 : prev.getSessions()) + number(doc, "sessions").longValue(),
+                (prev == null ? 0 : prev.getSets())     + number(doc, "sets").longValue(),
+                (prev == null ? 0 : prev.getReps())     + number(doc, "reps").longValue(),
+                (prev == null ? 0 : prev.getVolume())   + number(doc, "volume").doubleValue()
+            ));
+        }
+        return new ArrayList<>(buckets.values());
+    }
+
+
+    // =======================================================================
+    // Rebuild
+    // =======================================================================
+    /**
+     * Recomputes every rollup from the raw records and compares it with the 
+     * stored one.
+     * 
+     * @param verifyOnly only report the differences, don't replace the rollups
+     * @return counters: {@code records}, {@code skipped} (no user, exercise 
+     * or date), {@code buckets}, {@code missing}, {@code extra}, 
+     * {@code mismatched} and {@code written}
+     * @note
+     * Writes which land while a rebuild runs may be lost; run it while the 
+     * app is quiet, and verify again afterwards.
+     */
+    public Map<String, Long> rebuild(boolean verifyOnly) {
+        long                records  = 0;
+        long                skipped  = 0;
+        Map<String, Totals> expected = new HashMap<>();
+
+        String recordCollection = mongoTemplate.getCollectionName(ExerciseRecord.class);
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(recordCollection)
+                .find(BaseDocumentService.notSoftDeleted(mongoTemplate, ExerciseRecord.class)) // soft-deleted records are left out
+                .projection(Projections.include("user", "exercise", "date", "sets"))
+                .batchSize(BATCH_SIZE)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                if (!accumulate(expected, toKeyedTotals(cursor.next()), 1)) skipped++;
+                records++;
+            }
+        }
+
+        long extra = 0, mismatched = 0;
+        Map<String, Totals> remaining = new HashMap<>(expected);
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(COLLECTION).find().batchSize(BATCH_SIZE).iterator()) {
+            while (cursor.hasNext()) {
+                Document stored = cursor.next();
+                Totals   totals = remaining.remove(stored.getString("_id"));
+                if (totals == null)               extra++;
+                else if (!totals.matches(stored)) mismatched++;
+            }
+        }
+        long missing = remaining.size();
+
+        long written = 0;
+        if (!verifyOnly) {
+            clear();
+            List<Document> batch = new ArrayList<>(BATCH_SIZE);
+            for (Map.Entry<String, Totals> entry : expected.entrySet()) {
+                batch.add(entry.getValue().toDocument(entry.getKey()));
+                if (batch.size() == BATCH_SIZE) {
+                    mongoTemplate.getCollection(COLLECTION).insertMany(batch);
+                    written += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                mongoTemplate.getCollection(COLLECTION).insertMany(batch);
+                written += batch.size();
+            }
+        }
+
+        Map<String, Long> report = new LinkedHashMap<>();
+        report.put("records",    records);
+        report.put("skipped",    skipped);
+        report.put("buckets",    (long) expected.size());
+        report.put("missing",    missing);
+        report.put("extra",      extra);
+        report.put("mismatched", mismatched);
+        report.put("written",    written);
+        logger.info("Rollup " + (verifyOnly ? "verification" : "rebuild") + ": " + report);
+        return report;
+    }
+
+
+    // =======================================================================
+    // Metrics
+    // =======================================================================
+    /** {@code skippedRecords}: records written without a user, exercise or date. */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("skippedRecords", skippedRecords.sum());
+        return stats;
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    private void apply(Collection<ExerciseRecord> records, int sign) {
+        Map<String, Totals> deltas = new HashMap<>();
+        for (ExerciseRecord record : records) {
+            if (record != null && !accumulate(deltas, toKeyedTotals(record), sign)) skip(record.getId());
+        }
+        write(deltas);
+    }
+
+    /** A record which fits no bucket is left out, so the rest of its batch still counts. */
+    private void skip(Object recordId) {
+        skippedRecords.increment();
+        logger.warn("Record " + recordId + " has no user, exercise or date; left out of the rollups");
+    }
+
+    /** One unordered bulk of {@code $inc} upserts, then drops buckets which went empty. */
+    private void write(Map<String, Totals> deltas) {
+        deltas.values().removeIf(Totals::isZero);
+        if (deltas.isEmpty()) return;
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, COLLECTION);
+        deltas.forEach((id, delta) -> bulk.upsert(
+            Query.query(Criteria.where("_id").is(id)),
+            new Update()
+                .setOnInsert("user",     delta.user)
+                .setOnInsert("exercise", delta.exercise)
+                .setOnInsert("period",   delta.period.name())
+                .setOnInsert("start",    delta.start)
+                .inc("sessions", delta.sessions)
+                .inc("sets",     delta.sets)
+                .inc("reps",     delta.reps)
+                .inc("volume",   delta.volume)
+        ));
+        bulk.execute();
+
+        if (deltas.values().stream().anyMatch(delta -> delta.sessions < 0)) {
+            mongoTemplate.remove(
+                Query.query(Criteria.where("_id").in(deltas.keySet()).and("sessions").lte(0)), COLLECTION
+            );
+        }
+    }
+
+    /** @return {@code false} if the record contributes to no bucket */
+    private static boolean accumulate(Map<String, Totals> into, Map<String, Totals> contribution, int sign) {
+        contribution.forEach((id, totals) -> into.merge(id, totals.scaled(sign), Totals::plus));
+        return !contribution.isEmpty();
+    }
+
+    /** Contribution of a record entity to its day and week buckets. */
+    private static Map<String, Totals> toKeyedTotals(ExerciseRecord record) {
+        long sets = 0, reps = 0;
+        double volume = 0;
+        if (record.getSets() != null) {
+            for (RepetitionsModel set : record.getSets()) {
+                sets++;
+                if (set.getRepetitions() == null) continue;
+                for (Integer weight : set.getRepetitions()) {
+                    reps++;
+                    volume += weight == null ? 0 : weight;
+                }
+            }
+        }
+        return keyed(
+            record.getUser()     == null ? null : record.getUser().getId(),
+            record.getExercise() == null ? null : record.getExercise().getId(),
+            record.getDate(), sets, reps, volume
+        );
+    }
+
+    /** Contribution of a raw record document, as read by {@link #rebuild}. */
+    private static Map<String, Totals> toKeyedTotals(Document record) {
+        long sets = 0, reps = 0;
+        double volume = 0;
+        List<?> rawSets = record.get("sets", List.class);
+        if (rawSets != null) {
+            for (Object rawSet : rawSets) {
+                sets++;
+                List<?> repetitions = rawSet instanceof Document ? ((Document) rawSet).get("repetitions", List.class) : null;
+                if (repetitions == null) continue;
+                for (Object weight : repetitions) {
+                    reps++;
+                    volume += weight instanceof Number ? ((Number) weight).doubleValue() : 0;
+                }
+            }
+        }
+        return keyed(refId(record.get("user")), refId(record.get("exercise")), record.getDate("date"), sets, reps, volume);
+    }
+
+    /** Empty if {@code user}, {@code exercise} or {@code date} is missing. */
+    private static Map<String, Totals> keyed(
+        String user, String exercise, Date date, long sets, long reps, double volume
+    ) {
+        Map<String, Totals> keyed = new HashMap<>(2);
+        if (user == null || exercise == null || date == null) return keyed;
+        LocalDate           day   = date.toInstant().atZone(ZONE).toLocalDate();
+        for (Period period : Period.values()) {
+            LocalDate first = period == Period.WEEK ? day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)) : day;
+            Date      start = Date.from(first.atStartOfDay(ZONE).toInstant());
+            Totals    total = new Totals(user, exercise, period, start, 1, sets, reps, volume);
+            keyed.put(String.join(":", user, exercise, period.name(), Long.toString(start.getTime())), total);
+        }
+        return keyed;
+    }
+
+    /** Id of a referenced document, whether it is stored as a DBRef or embedded. */
+    private static String refId(Object ref) {
+        if (ref instanceof DBRef)    return Objects.toString(((DBRef) ref).getId(), null);
+        if (ref instanceof Document) return Objects.toString(((Document) ref).get("_id"), null);
+        return Objects.toString(ref, null);
+    }
+
+    private static Number number(Document doc, String key) {
+        Object value = doc.get(key);
+        return value instanceof Number ? (Number) value : 0;
+    }
+
+
+
+
+    /** Totals of one bucket, or a delta to apply to it. */
+    private static final class Totals {
+        final String user;
+        final String exercise;
+        final Period period;
+        final Date   start;
+        final long   sessions;
+        final long   sets;
+        final long   reps;
+        final double volume;
+
+        Totals(String user, String exercise, Period period, Date start, long sessions, long sets, long reps, double volume) {
+            this.user     = user;
+            this.exercise = exercise;
+            this.period   = period;
+            this.start    = start;
+            this.sessions = sessions;
+            this.sets     = sets;
+            this.reps     = reps;
+            this.volume   = volume;
+        }
+
+        Totals scaled(int sign) {
+            return new Totals(user, exercise, period, start, sign * sessions, sign * sets, sign * reps, sign * volume);
+        }
+
+        Totals plus(Totals other) {
+            return new Totals(
+                user, exercise, period, start,
+                sessions + other.sessions, sets + other.sets, reps + other.reps, volume + other.volume
+            );
+        }
+
+        boolean isZero() {
+            return sessions == 0 && sets == 0 && reps == 0 && volume == 0;
+        }
+
+        boolean matches(Document stored) {
+            return number(stored, "sessions").longValue() == sessions
+                && number(stored, "sets").longValue()     == sets
+                && number(stored, "reps").longValue()     == reps
+                && Math.abs(number(stored, "volume").doubleValue() - volume) < 1e-6;
+        }
+
+        Document toDocument(String id) {
+            return new Document("_id", id)
+                .append("user",     user)
+                .append("exercise", exercise)
+                .append("period",   period.name())
+                .append("start",    start)
+                .append("sessions", sessions)
+                .append("sets",     sets)
+                .append("reps",     reps)
+                .append("volume",   volume);
+        }
+    }
+}
@@ -0,0 +1,604 @@
+package com.thirteenseven.workoutdiary.service;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ~~~~~~~~ Mongo ~~~~~~~~
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonWriterSettings;
+import org.bson.types.ObjectId;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Service;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.model.ExerciseRecord;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+
+/**
+ * Optional group commit of new exercise records. When many clients log at
+ * the same moment, their inserts are collected for at most
+ * {@code maxDelayMillis} or {@code maxBatch} documents and written with one
+ * unordered {@code insertMany} instead of one round trip each.
+ * <p>
+ * What a request waits for is set by {@code WorkoutDiary.app.groupCommit.ack}:
+ * <ul>
+ * <li>{@link Ack#FLUSH}: until its batch is in the database, errors
+ * included.</li>
+ * <li>{@link Ack#JOURNAL}: until the document is appended and synced to a
+ * local journal file. The journal is replayed at startup, so an acked
+ * record survives a crash before its flush; ids are assigned before
+ * journaling, so a replay never writes a record twice.</li>
+ * </ul>
+ * Journaled records carry a sequence number, in queue order. After each
+ * flush the last flushed number is synced to {@code <journal>.checkpoint},
+ * and a replay skips everything up to it, so a record flushed and deleted
+ * since is not brought back. The journal is split into segments 
+ * ({@code <journal>.<first sequence>}) of about {@code journalSegmentBytes};
+ * segments behind the checkpoint are deleted, and the current one is 
+ * truncated whenever everything in it is flushed.
+ * The rollups and buckets of a record are updated by the buffer once the
+ * record is in the database. Records the database rejects are moved to 
+ * {@code <journal>.rejected}. Pending writes are drained on shutdown. 
+ * Disabled by default.
+ */
+@Service
+public class RecordWriteBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecordWriteBuffer.class);
+
+    /** Upper bound of the wait in {@link Ack#FLUSH} mode, however busy the buffer is */
+    private static final long   FLUSH_WAIT_SECONDS = 30;
+    /** Pause before a batch is retried while the database cannot be reached */
+    private static final long   RETRY_PAUSE_MILLIS = 1000;
+    /** Suffix of the file next to the journal holding records the database rejected */
+    private static final String REJECTED_SUFFIX    = ".rejected";
+    /** Suffix of the file holding the sequence number of the last flushed record */
+    private static final String CHECKPOINT_SUFFIX  = ".checkpoint";
+
+    private static final JsonWriterSettings JOURNAL_JSON  = JsonWriterSettings.builder().outputMode(JsonMode.EXTENDED).build();
+    private static final Codec<Document>    JOURNAL_CODEC = MongoClientSettings.getDefaultCodecRegistry().get(Document.class);
+
+    public enum Ack { FLUSH, JOURNAL }
+
+    @Value("${WorkoutDiary.app.groupCommit.enabled:false}")
+    private boolean enabled;
+    @Value("${WorkoutDiary.app.groupCommit.maxBatch:200}")
+    private int     maxBatch;
+    @Value("${WorkoutDiary.app.groupCommit.maxDelayMillis:5}")
+    private long    maxDelayMillis;
+    @Value("${WorkoutDiary.app.groupCommit.queueSize:10000}")
+    private int     queueSize;
+    @Value("${WorkoutDiary.app.groupCommit.ack:FLUSH}")
+    private Ack     ack;
+    @Value("${WorkoutDiary.app.groupCommit.journal:record-write-buffer.journal}")
+    private String  journalPath;
+    @Value("${WorkoutDiary.app.groupCommit.journalSegmentBytes:16777216}")
+    private long    journalSegmentBytes;
+
+    @Autowired
+    private MongoTemplate       mongoTemplate;
+    @Autowired
+    private RecordRollupService recordRollups;
+    @Autowired
+    private RecordBucketService recordBuckets;
+
+    private BlockingQueue<Pending> queue;
+    /** Free queue slots; taken by {@link #insert} before journaling, given back by the flusher */
+    private Semaphore              capacity;
+    private Thread                 flusher;
+    /** Current journal segment, appended to under {@link #journalLock} */
+    private FileChannel            journal;
+    private Path                   journalSegment;
+    /** Older segments, oldest first */
+    private final Deque<Segment>   closedSegments = new ArrayDeque<>();
+    private FileChannel            checkpoint;
+    private final Object           journalLock    = new Object();
+    /** Sequence number of the last journaled record, and of the last flushed one */
+    private final AtomicLong       journaledSeq   = new AtomicLong();
+    private final AtomicLong       flushedSeq     = new AtomicLong();
+    private volatile boolean       running;
+
+    private final LongAdder        documents     = new LongAdder();
+    private final LongAdder        batches       = new LongAdder();
+    private final LongAdder        failures      = new LongAdder();
+    private final LongAdder        flushNanos    = new LongAdder();
+    private final LongAccumulator  maxFlushNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder        waitNanos     = new LongAdder();
+
+
+    /** A document waiting for its batch. */
+    private static final class Pending {
+        final Document                doc;
+        final long                    enqueuedAt = System.nanoTime();
+        final CompletableFuture<Void> flushed    = new CompletableFuture<>();
+        /** Journal sequence number; 0 unless {@link Ack#JOURNAL} */
+        long                          seq;
+
+        Pending(Document doc) {
+            this.doc = doc;
+        }
+    }
+
+    /** A full journal segment and the last sequence number in it. */
+    private static final class Segment {
+        final Path path;
+        final long lastSeq;
+
+        Segment(Path path, long lastSeq) {
+            this.path    = path;
+            this.lastSeq = lastSeq;
+        }
+    }
+
+
+    // =======================================================================
+    // Lifecycle
+    // =======================================================================
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) return;
+        queue    = new ArrayBlockingQueue<>(queueSize);
+        capacity = new Semaphore(queueSize);
+        if (ack == Ack.JOURNAL) {
+            checkpoint = FileChannel.open(
+                Paths.get(journalPath + CHECKPOINT_SUFFIX), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+            );
+            replayJournal();
+            journalSegment = segmentPath(journaledSeq.get() + 1);
+            journal        = FileChannel.open(journalSegment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "workoutdiary-group-commit");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info("Group commit on: up to " + maxBatch + " records or " + maxDelayMillis + " ms per batch, ack on " + ack);
+    }
+
+    /** Stops taking records and writes everything still queued. */
+    @PreDestroy
+    public void shutdown() throws InterruptedException, IOException {
+        if (!enabled || !running) return;
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(FLUSH_WAIT_SECONDS));
+        if (journal != null) {
+            synchronized (journalLock) {
+                journal.close();
+                checkpoint.close();
+            }
+        }
+        logger.info("Group commit drained, " + queue.size() + " record(s) left behind");
+    }
+
+
+    // =======================================================================
+    // Public
+    // =======================================================================
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a new record and returns once it is acknowledged. The id of
+     * the record is assigned here.
+     *
+     * @throws IllegalStateException if the buffer is disabled or shutting
+     *         down, or the database did not take the record in time
+     * @throws RuntimeException      the write error of the record ({@link Ack#FLUSH} only)
+     */
+    public void insert(ExerciseRecord record) {
+        if (!running) throw new IllegalStateException("Group commit is not running.");
+
+        MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(ExerciseRecord.class);
+        ObjectId                 id     = new ObjectId();
+        entity.getPropertyAccessor(record).setProperty(entity.getRequiredIdProperty(), id.toHexString());
+        Document doc = new Document();
+        mongoTemplate.getConverter().write(record, doc);
+        doc.put("_id", id);
+
+        Pending pending = new Pending(doc);
+        try {
+            /** A slot is reserved before journaling, so every journaled record is also queued */
+            if (!capacity.tryAcquire(FLUSH_WAIT_SECONDS, TimeUnit.SECONDS))
+                throw new IllegalStateException("Group commit queue is full.");
+            try {
+                if (ack == Ack.JOURNAL) journalAndQueue(pending);
+                else                    queue.add(pending);
+            } catch (RuntimeException e) {
+                capacity.release();
+                throw e;
+            }
+            if (ack == Ack.FLUSH) pending.flushed.get(FLUSH_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the group commit.", e);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Group commit did not flush in time.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            waitNanos.add(System.nanoTime() - pending.enqueuedAt);
+        }
+    }
+
+    /** Throughput and flush latency counters. */
+    public Map<String, Long> getStats() {
+        long batchCount = batches.sum();
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("enabled",             enabled ? 1L : 0L);
+        stats.put("documents",           documents.sum());
+        stats.put("batches",             batchCount);
+        stats.put("failures",            failures.sum());
+        stats.put("avgBatchSize",        batchCount == 0 ? 0L : documents.sum() / batchCount);
+        stats.put("avgFlushMicros",      batchCount == 0 ? 0L : flushNanos.sum() / batchCount / 1000);
+        stats.put("maxFlushMicros",      maxFlushNanos.get() / 1000);
+        stats.put("totalAckWaitMicros",  waitNanos.sum() / 1000);
+        stats.put("queued",              queue == null ? 0L : queue.size());
+        stats.put("unflushedJournaled",  journaledSeq.get() - flushedSeq.get());
+        return stats;
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = take(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+
+                /** Fill the batch until it is full or the oldest record has waited long enough */
+                long deadline = first.enqueuedAt + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+                while (batch.size() < maxBatch) {
+                    long    left = deadline - System.nanoTime();
+                    Pending next = take(Math.max(left, 0), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                /** Acknowledged records are retried until the database is back; the journal covers a stop meanwhile */
+                while (!flush(batch) && running) Thread.sleep(RETRY_PAUSE_MILLIS);
+            } catch (InterruptedException e) {
+                /** Keep draining; shutdown waits for the queue to empty */
+                logger.warn("Group commit flusher interrupted");
+            } catch (RuntimeException e) {
+                logger.error("Group commit flush failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** Next queued record, giving its slot back to {@link #insert}. */
+    private Pending take(long timeout, TimeUnit unit) throws InterruptedException {
+        Pending pending = timeout > 0 ? queue.poll(timeout, unit) : queue.poll();
+        if (pending != null) capacity.release();
+        return pending;
+    }
+
+    /**
+     * Writes one batch.
+     *
+     * @return {@code false} if the batch must be retried: the database could
+     *         not be reached and the records are acknowledged already 
+     *         ({@link Ack#JOURNAL})
+     */
+    private boolean flush(List<Pending> batch) {
+        List<Document> docs = new ArrayList<>(batch.size());
+        batch.forEach(pending -> docs.add(pending.doc));
+
+        long                         start  = System.nanoTime();
+        Map<Integer, BulkWriteError> errors = new LinkedHashMap<>();
+        try {
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(ExerciseRecord.class))
+                .insertMany(docs, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            e.getWriteErrors().forEach(error -> errors.put(error.getIndex(), error));
+        } catch (RuntimeException e) {
+            /** Nothing is known to be written */
+            logger.error("Group commit batch of " + batch.size() + " failed", e);
+            failures.add(batch.size());
+            if (ack == Ack.JOURNAL) return false;
+            batch.forEach(pending -> pending.flushed.completeExceptionally(e));
+            return true;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        batches.increment();
+        flushNanos.add(elapsed);
+        maxFlushNanos.accumulate(elapsed);
+        documents.add(batch.size() - errors.size());
+        failures.add(errors.size());
+
+        List<Document> written  = new ArrayList<>(batch.size());
+        List<Document> rejected = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            BulkWriteError error = errors.get(i);
+            if (error != null) {
+                batch.get(i).flushed.completeExceptionally(new IllegalStateException(error.getMessage()));
+                logger.error("Group commit could not write record " + docs.get(i).get("_id") + ": " + error.getMessage());
+                rejected.add(docs.get(i));
+            } else {
+                batch.get(i).flushed.complete(null);
+                written.add(docs.get(i));
+            }
+        }
+        applyDerived(written);
+
+        if (ack == Ack.JOURNAL) {
+            /** A record rejected by the database would be rejected by every replay too */
+            moveAside(rejected);
+            long first = batch.get(0).seq;
+            if (first == flushedSeq.get() + 1) {
+                checkpoint(batch.get(batch.size() - 1).seq);
+            } else {
+                /** Records in between were never flushed; keep the journal so a restart replays them */
+                logger.error("Group commit skipped journal records " + (flushedSeq.get() + 1) + " to " + (first - 1) + "; journal kept until restart");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Appends the record to the journal and queues it under one lock, so 
+     * queue order, and with it flush order, is sequence order.
+     */
+    private void journalAndQueue(Pending pending) {
+        String json = pending.doc.toJson(JOURNAL_JSON, JOURNAL_CODEC);
+        synchronized (journalLock) {
+            long   seq  = journaledSeq.get() + 1;
+            byte[] line = ("{\"seq\": " + seq + ", \"doc\": " + json + "}\n").getBytes(StandardCharsets.UTF_8);
+            try {
+                if (journal.size() >= journalSegmentBytes) rotateJournal(seq);
+                journal.write(ByteBuffer.wrap(line));
+                journal.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            journaledSeq.set(seq);
+            pending.seq = seq;
+            queue.add(pending);
+        }
+    }
+
+    /** Closes the current segment and starts a new one with {@code firstSeq}. Holds {@link #journalLock}. */
+    private void rotateJournal(long firstSeq) throws IOException {
+        journal.close();
+        closedSegments.addLast(new Segment(journalSegment, firstSeq - 1));
+        journalSegment = segmentPath(firstSeq);
+        journal        = FileChannel.open(journalSegment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Records that everything up to {@code seq} is in the database: syncs 
+     * the checkpoint, deletes the segments behind it and empties the current
+     * one if nothing in it is left to flush.
+     */
+    private void checkpoint(long seq) {
+        synchronized (journalLock) {
+            if (!journal.isOpen()) return;
+            try {
+                writeCheckpoint(seq);
+            } catch (IOException e) {
+                /** The old checkpoint stays valid; a replay just skips less */
+                logger.warn("Could not write the group commit checkpoint: " + e.getMessage());
+                return;
+            }
+            flushedSeq.set(seq);
+            while (!closedSegments.isEmpty() && closedSegments.peekFirst().lastSeq <= seq) {
+                Path segment = closedSegments.pollFirst().path;
+                try {
+                    Files.deleteIfExists(segment);
+                } catch (IOException e) {
+                    logger.warn("Could not delete group commit journal segment " + segment + ": " + e.getMessage());
+                }
+            }
+            if (journaledSeq.get() == seq) {
+                try {
+                    journal.truncate(0);
+                    journal.position(0);
+                } catch (IOException e) {
+                    logger.warn("Could not truncate the group commit journal: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void writeCheckpoint(long seq) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES).putLong(seq);
+        buffer.flip();
+        checkpoint.write(buffer, 0);
+        checkpoint.force(false);
+    }
+
+    private long readCheckpoint() throws IOException {
+        if (checkpoint.size() < Long.BYTES) return 0;
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        checkpoint.read(buffer, 0);
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    private Path segmentPath(long firstSeq) {
+        return Paths.get(journalPath + "." + firstSeq);
+    }
+
+    /** Journal segments on disk, oldest first. */
+    private List<Path> journalSegments() throws IOException {
+        Path   journalFile = Paths.get(journalPath).toAbsolutePath();
+        String prefix      = journalFile.getFileName() + ".";
+        try (Stream<Path> files = Files.list(journalFile.getParent())) {
+            return files
+                .filter(file -> {
+                    String name = file.getFileName().toString();
+                    return name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d+");
+                })
+                .sorted(Comparator.comparingLong(file -> Long.parseLong(file.getFileName().toString().substring(prefix.length()))))
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Writes the records journaled but not flushed before the last stop: 
+     * the segments are streamed line by line, records up to the checkpoint
+     * are skipped, and the rest are inserted in batches of {@code maxBatch}.
+     * Records the database rejects for good are moved aside, so one bad 
+     * document cannot keep the app from starting; an unreachable database 
+     * still fails the startup and leaves the journal as it is.
+     */
+    private void replayJournal() throws IOException {
+        long           checkpointSeq = readCheckpoint();
+        long           lastSeq       = checkpointSeq;
+        List<Path>     segments      = journalSegments();
+        ReplayCounts   counts        = new ReplayCounts();
+        List<Document> docs          = new ArrayList<>(maxBatch);
+        for (Path segment : segments) {
+            try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) continue;
+                    Document entry;
+                    try {
+                        entry = Document.parse(line, JOURNAL_CODEC);
+                    } catch (RuntimeException e) {
+                        /** A torn last line: its request was never acknowledged */
+                        logger.warn("Skipping unreadable group commit journal line in " + segment);
+                        continue;
+                    }
+                    long seq = ((Number) entry.get("seq")).longValue();
+                    lastSeq  = Math.max(lastSeq, seq);
+                    if (seq <= checkpointSeq) {
+                        counts.skipped++;
+                        continue;
+                    }
+                    docs.add(entry.get("doc", Document.class));
+                    if (docs.size() >= maxBatch) {
+                        replayBatch(docs, counts);
+                        docs.clear();
+                    }
+                }
+            }
+        }
+        replayBatch(docs, counts);
+
+        /** Everything is in the database now: start over from a clean journal */
+        writeCheckpoint(lastSeq);
+        journaledSeq.set(lastSeq);
+        flushedSeq.set(lastSeq);
+        for (Path segment : segments) Files.deleteIfExists(segment);
+        if (segments.isEmpty()) return;
+        logger.info(
+            "Replayed group commit journal: " + counts.written + " record(s) written, " 
+            + counts.duplicates + " already present, " + counts.skipped + " behind the checkpoint, "
+            + counts.rejected + " moved aside"
+        );
+    }
+
+    private static final class ReplayCounts {
+        int written;
+        int duplicates;
+        int skipped;
+        int rejected;
+    }
+
+    private void replayBatch(List<Document> docs, ReplayCounts counts) {
+        if (docs.isEmpty()) return;
+        Map<Integer, BulkWriteError> errors = new LinkedHashMap<>();
+        try {
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(ExerciseRecord.class))
+                .insertMany(docs, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            e.getWriteErrors().forEach(error -> errors.put(error.getIndex(), error));
+        }
+
+        List<Document> written  = new ArrayList<>(docs.size());
+        List<Document> rejected = new ArrayList<>();
+        for (int i = 0; i < docs.size(); i++) {
+            BulkWriteError error = errors.get(i);
+            if (error == null)                 written.add(docs.get(i));
+            else if (error.getCode() == 11000) counts.duplicates++; // E11000: flushed before the stop
+            else {
+                rejected.add(docs.get(i));
+                logger.error("Group commit journal record " + docs.get(i).get("_id") + " rejected: " + error.getMessage());
+            }
+        }
+        counts.written  += written.size();
+        counts.rejected += rejected.size();
+        moveAside(rejected);
+        applyDerived(written);
+    }
+
+    /** Keeps records the database rejected for good next to the journal, for a manual look. */
+    private void moveAside(List<Document> docs) {
+        if (docs.isEmpty()) return;
+        StringBuilder lines = new StringBuilder();
+        docs.forEach(doc -> lines.append(doc.toJson(JOURNAL_JSON, JOURNAL_CODEC)).append('\n'));
+        try {
+            Files.write(
+                Paths.get(journalPath + REJECTED_SUFFIX), lines.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND
+            );
+        } catch (IOException e) {
+            logger.error("Could not move " + docs.size() + " rejected record(s) aside: " + e.getMessage());
+        }
+    }
+
+    /** Rollups and buckets follow the records once they are in the database. */
+    private void applyDerived(List<Document> written) {
+        if (written.isEmpty()) return;
+        try {
+            recordRollups.addDocuments(written);
+            recordBuckets.addDocuments(written);
+        } catch (RuntimeException e) {
+            /** The records are written; a rollup rebuild recovers the totals */
+            logger.error("Could not update the rollups of " + written.size() + " group-committed record(s)", e);
+        }
+    }
+}
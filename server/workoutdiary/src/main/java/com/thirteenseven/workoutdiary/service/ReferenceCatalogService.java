@@ -0,0 +1,224 @@
+package com.thirteenseven.workoutdiary.service;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.stereotype.Service;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.model.Difficulty;
+import com.thirteenseven.workoutdiary.model.ExerciseType;
+import com.thirteenseven.workoutdiary.model.MuscleGroup;
+import com.thirteenseven.workoutdiary.model.Role;
+import com.thirteenseven.workoutdiary.model.base.NameBasedModel;
+import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
+
+
+/**
+ * Warm, read-mostly cache of the small name-based reference collections
+ * ({@link MuscleGroup}, {@link Difficulty}, {@link ExerciseType} and
+ * {@link Role}).
+ * <p>
+ * Every collection is held as an immutable snapshot with name and id maps.
+ * Reads never lock: they only dereference the current snapshot. A write
+ * through the controllers calls {@link #invalidate}, which bumps the version
+ * stamp and drops the snapshot; the next read reloads the whole collection.
+ * Soft-deleted entities are left out of the snapshots.
+ *
+ * @note
+ * Cached entities are shared between requests, so callers must not modify
+ * them.
+ */
+@Service
+public class ReferenceCatalogService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceCatalogService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final Map<Class<?>, Catalog<?>> catalogs;
+
+
+    // =======================================================================
+    // Constructor
+    // =======================================================================
+    public ReferenceCatalogService() {
+        Map<Class<?>, Catalog<?>> map = new HashMap<>();
+        for (Class<? extends NameBasedModel> clazz : List.of(MuscleGroup.class, Difficulty.class, ExerciseType.class, Role.class)) {
+            map.put(clazz, new Catalog<>());
+        }
+        this.catalogs = Collections.unmodifiableMap(map);
+    }
+
+
+    // =======================================================================
+    // Lookups
+    // =======================================================================
+    /** Whether the model class is served by this cache. */
+    public boolean isCached(Class<?> clazz) {
+        return catalogs.containsKey(clazz);
+    }
+
+    /** All entities of a cached collection, by name. */
+    public <T extends NameBasedModel> Map<String, T> byName(Class<T> clazz) {
+        return snapshot(clazz).byName;
+    }
+
+    /** All entities of a cached collection, by id. */
+    public <T extends NameBasedModel> Map<String, T> byId(Class<T> clazz) {
+        return snapshot(clazz).byId;
+    }
+
+    public <T extends NameBasedModel> Optional<T> findByName(Class<T> clazz, String name) {
+        return Optional.ofNullable(byName(clazz).get(name));
+    }
+
+    public <T extends NameBasedModel> Optional<T> findById(Class<T> clazz, String id) {
+        return Optional.ofNullable(byId(clazz).get(id));
+    }
+
+    /**
+     * Resolves role names as sent on sign up, the way 
+     * {@code UserRoleRepository.getRoles} does: {@code admin} and {@code mod}
+     * name the admin and moderator roles, any other name the user role.
+     *
+     * @throws RuntimeException if a role is not in the catalog
+     */
+    public Set<Role> getRoles(Collection<String> roleNames) {
+        Set<Role> roles = new HashSet<>();
+        for (String roleName : roleNames) {
+            Role.ERole eRole;
+            switch (roleName) {
+                case "admin": eRole = Role.ERole.ROLE_ADMIN;     break;
+                case "mod":   eRole = Role.ERole.ROLE_MODERATOR; break;
+                default:      eRole = Role.ERole.ROLE_USER;
+            }
+            roles.add(findByName(Role.class, eRole.name())
+                .orElseThrow(() -> new RuntimeException("[Error] " + eRole.name() + " is not found.")));
+        }
+        return roles;
+    }
+
+    /** Version stamp of a cached collection; it changes on every invalidation. */
+    public long getVersion(Class<?> clazz) {
+        Catalog<?> catalog = catalogs.get(clazz);
+        if (catalog == null)
+            throw new IllegalArgumentException(clazz.getSimpleName() + " is not a cached reference type.");
+        return catalog.version.get();
+    }
+
+
+    // =======================================================================
+    // Invalidation
+    // =======================================================================
+    /**
+     * Drops the snapshot of a collection after it has been written. Classes
+     * which are not cached are ignored.
+     */
+    public void invalidate(Class<?> clazz) {
+        Catalog<?> catalog = catalogs.get(clazz);
+        if (catalog == null) return;
+        catalog.version.incrementAndGet();
+        catalog.snapshot.set(null);
+        catalog.invalidations.increment();
+        logger.debug("Invalidated catalog of " + clazz.getSimpleName());
+    }
+
+
+    // =======================================================================
+    // Metrics
+    // =======================================================================
+    /** Hit/miss counters and version stamp of every cached collection, by class name. */
+    public Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        catalogs.forEach((clazz, catalog) -> {
+            Map<String, Long> entry = new LinkedHashMap<>();
+            entry.put("hits",          catalog.hits.sum());
+            entry.put("misses",        catalog.misses.sum());
+            entry.put("invalidations", catalog.invalidations.sum());
+            entry.put("version",       catalog.version.get());
+            Snapshot<?> snapshot = catalog.snapshot.get();
+            entry.put("size",          snapshot == null ? 0L : snapshot.byId.size());
+            stats.put(clazz.getSimpleName(), entry);
+        });
+        return stats;
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    @SuppressWarnings("unchecked")
+    private <T extends NameBasedModel> Catalog<T> catalog(Class<T> clazz) {
+        Catalog<T> catalog = (Catalog<T>) catalogs.get(clazz);
+        if (catalog == null)
+            throw new IllegalArgumentException(clazz.getSimpleName() + " is not a cached reference type.");
+        return catalog;
+    }
+
+    private <T extends NameBasedModel> Snapshot<T> snapshot(Class<T> clazz) {
+        Catalog<T>  catalog  = catalog(clazz);
+        Snapshot<T> snapshot = catalog.snapshot.get();
+        if (snapshot != null) {
+            catalog.hits.increment();
+            return snapshot;
+        }
+
+        catalog.misses.increment();
+        long version = catalog.version.get();
+        snapshot     = new Snapshot<>(mongoTemplate.find(new BasicQuery(BaseDocumentService.notSoftDeleted(mongoTemplate, clazz)), clazz));
+        if (catalog.snapshot.compareAndSet(null, snapshot) && catalog.version.get() != version) {
+            /** Invalidated while loading; don't keep a stale snapshot around */
+            catalog.snapshot.compareAndSet(snapshot, null);
+        }
+        return snapshot;
+    }
+
+
+
+
+    /** Cache slot of one reference collection. */
+    private static final class Catalog<T extends NameBasedModel> {
+        final AtomicReference<Snapshot<T>> snapshot      = new AtomicReference<>();
+        final AtomicLong                   version       = new AtomicLong();
+        final LongAdder                    hits          = new LongAdder();
+        final LongAdder                    misses        = new LongAdder();
+        final LongAdder                    invalidations = new LongAdder();
+    }
+
+    /** Immutable view of a reference collection. */
+    private static final class Snapshot<T extends NameBasedModel> {
+        final Map<String, T> byName;
+        final Map<String, T> byId;
+
+        Snapshot(List<T> entities) {
+            Map<String, T> names = new HashMap<>();
+            Map<String, T> ids   = new HashMap<>();
+            for (T entity : entities) {
+                names.put(entity.getName(), entity);
+                ids.put(entity.getId(), entity);
+            }
+            this.byName = Collections.unmodifiableMap(names);
+            this.byId   = Collections.unmodifiableMap(ids);
+        }
+    }
+}
@@ -2,28 +2,77 @@ package com.thirteenseven.workoutdiary.service.base;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.DBRef;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
 import com.mongodb.client.model.Projections;
 import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mapping.PersistentPropertyAccessor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.convert.UpdateMapper;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.ReflectionUtils;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
 
 
+import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 import com.thirteenseven.workoutdiary.model.base.MongoBaseModel;
+import com.thirteenseven.workoutdiary.model.base.NameBasedModel;
+import com.thirteenseven.workoutdiary.payload.response.BulkWriteResult;
+import com.thirteenseven.workoutdiary.payload.response.BulkWriteResult.Outcome;
+import com.thirteenseven.workoutdiary.payload.response.ItemResult;
+import com.thirteenseven.workoutdiary.service.BackgroundJobService;
+import com.thirteenseven.workoutdiary.service.BackgroundJobService.Job;
+import com.thirteenseven.workoutdiary.service.ReferenceCatalogService;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 
 
 
@@ -31,37 +80,961 @@ public abstract class BaseDocumentService {
 
     static Logger logger              = LoggerFactory.getLogger(BaseDocumentService.class);
 
+    /** Counter bumped by every write of a document; a missing field reads as revision 0. */
+    public static final String REVISION_FIELD     = "revision";
+    /** 
+     * Names the soft-delete flag of a model may have as a boolean property
+     * ({@code isDeleted}, {@code deleted}, {@code softDeleted}), compared 
+     * case-insensitively. See {@link #softDeletedField(MongoTemplate, Class)}.
+     */
+    private static final Set<String> SOFT_DELETED_PROPERTIES = Set.of("isdeleted", "deleted", "softdeleted");
+    /** Resolved soft-delete property per model class; empty if it has none */
+    private static final Map<Class<?>, Optional<MongoPersistentProperty>> softDeletedProperties = new ConcurrentHashMap<>();
+    /** {@code collection.field} of the unique key indexes already ensured by {@link #upsertAllByKey} */
+    private final Set<String> ensuredKeyIndexes = ConcurrentHashMap.newKeySet();
+
     
     protected abstract MongoTemplate getMongoTemplate();
 
+    @Autowired
+    private BackgroundJobService    backgroundJobs;
+    @Autowired
+    private ReferenceCatalogService referenceCatalog;
+
 
 
 
     public <T> List<T> queryOnClass(Query query, Class<T> clazz) {
+        return findEntities(query, clazz);
+    }
+
+    /**
+     * Runs a read query for the search and paging methods of this class. 
+     * Services whose documents reference other collections override it with
+     * {@link #findWithBatchedReferences}.
+     */
+    protected <T> List<T> findEntities(Query query, Class<T> clazz) {
         return getMongoTemplate().find(query, clazz);
     }
 
 
     public <T> Page<T> findPaginated(Query query, Class<T> clazz, Pageable pageable) {
         // Fetch the data within the page limits
-        List<T> items = getMongoTemplate().find(query.with(pageable), clazz);
+        List<T> items = findEntities(query.with(pageable), clazz);
     
         // Count total matching documents
         long totalItems = getMongoTemplate().count(Query.of(query).limit(-1).skip(-1), clazz);
     
         return new PageImpl<>(items, pageable, totalItems);
     }
-    
 
 
+    /**
+     * One page of a query in a single round trip. {@code size + 1} documents 
+     * are fetched and the extra one only tells whether there is a next page, 
+     * so no {@code count} is needed.
+     *
+     * @param query    filters of the page; paging is applied to it
+     * @param clazz    model class of the collection
+     * @param pageable page index, size and sort
+     */
+    public <T> Slice<T> findSlice(Query query, Class<T> clazz, Pageable pageable) {
+        query.with(pageable).limit(pageable.getPageSize() + 1);
+
+        List<T> items   = findEntities(query, clazz);
+        boolean hasNext = items.size() > pageable.getPageSize();
+        if (hasNext) items = new ArrayList<>(items.subList(0, pageable.getPageSize()));
+        return new SliceImpl<>(items, pageable, hasNext);
+    }
+
+
+    /** How the total of a search is computed, see {@link #countMatching}. */
+    public enum TotalCount {
+        /** No total, the default: paging does not need it. */
+        NONE,
+        /** {@code count} of the matching documents, O(matching documents). */
+        EXACT,
+        /** 
+         * Collection metadata when the query has no filter, O(1); a filtered 
+         * query has no cheap estimate and falls back to {@link #EXACT}.
+         */
+        ESTIMATED
+    }
 
+    /**
+     * Counts the documents matching the filters of {@code query}, ignoring 
+     * its paging. Call it before the query is paged or seeked.
+     *
+     * @return the total, or {@code null} for {@link TotalCount#NONE}
+     */
+    public <T> Long countMatching(Query query, Class<T> clazz, TotalCount mode) {
+        switch (mode) {
+            case NONE:
+                return null;
+            case ESTIMATED:
+                if (query.getQueryObject().isEmpty())
+                    return getMongoTemplate().estimatedCount(clazz);
+                // fall through
+            default:
+                return getMongoTemplate().count(Query.of(query).limit(-1).skip(-1), clazz);
+        }
+    }
     
 
+
+
+    /**
+     * Keyset (seek) page in descending {@code (sortProperty, _id)} order: only
+     * documents strictly after the last one the client has seen are read, so 
+     * every page costs the same no matter how deep it is. Back it with an 
+     * index ending in {@code (sortProperty, _id)}.
+     * <p>
+     * Documents whose {@code sortProperty} is {@code null} or missing come 
+     * last, as in Mongo's own descending sort, ordered by {@code _id}.
+     *
+     * @param query        filters of the page, left as they are; it may hold an {@code $or} of its own
+     * @param clazz        model class of the collection
+     * @param sortProperty property the page is ordered by (e.g. {@code date})
+     * @param lastValue    {@code sortProperty} of the last document seen, may be {@code null}
+     * @param lastId       {@code _id} of the last document seen
+     * @param size         page size
+     */
+    public <T> Slice<T> findSeekPage(
+        Query    query,
+        Class<T> clazz,
+        String   sortProperty,
+        Object   lastValue,
+        String   lastId,
+        int      size
+    ) {
+        Criteria after = lastValue == null
+            ? new Criteria().andOperator(
+                Criteria.where(sortProperty).is(null),
+                Criteria.where("id").lt(lastId)
+            )
+            : new Criteria().orOperator(
+                Criteria.where(sortProperty).lt(lastValue),
+                new Criteria().andOperator(
+                    Criteria.where(sortProperty).is(lastValue),
+                    Criteria.where("id").lt(lastId)
+                ),
+                Criteria.where(sortProperty).is(null) // $lt does not match null, which sorts after any value
+            );
+
+        /** Joined with $and, so criteria of the caller on the same keys ($or included) do not clash */
+        Document filter = query.getQueryObject();
+        Query    seek   = new BasicQuery(
+            filter.isEmpty() ? after.getCriteriaObject() : new Document("$and", List.of(filter, after.getCriteriaObject())),
+            query.getFieldsObject()
+        );
+        seek.with(Sort.by(Sort.Direction.DESC, sortProperty, "id")).limit(size + 1);
+
+        List<T> items   = findEntities(seek, clazz);
+        boolean hasNext = items.size() > size;
+        if (hasNext) items = new ArrayList<>(items.subList(0, size));
+        return new SliceImpl<>(items, PageRequest.of(0, size), hasNext);
+    }
+
+
+    /**
+     * Reads {@code query} without letting the mapping layer resolve the 
+     * given references one document at a time. The referenced ids of the 
+     * whole result are collected first, then every referenced collection is
+     * loaded with a single {@code $in} query, or from the reference catalog
+     * when it is cached there.
+     * <p>
+     * References are matched by id whether they are stored as DBRefs, raw 
+     * ids or embedded documents; ids which no longer exist read as 
+     * {@code null}, as with DBRef resolution.
+     *
+     * @param query      filters, sort, paging and field projection
+     * @param clazz      model class of the collection
+     * @param references referenced model class by property name (e.g. {@code user})
+     */
+    protected <T> List<T> findWithBatchedReferences(Query query, Class<T> clazz, Map<String, Class<?>> references) {
+        MongoConverter           converter = getMongoTemplate().getConverter();
+        MongoPersistentEntity<?> entity    = converter.getMappingContext().getRequiredPersistentEntity(clazz);
+        QueryMapper              mapper    = new QueryMapper(converter);
+
+        FindIterable<Document> find = getMongoTemplate().getCollection(getMongoTemplate().getCollectionName(clazz))
+            .find(mapper.getMappedObject(query.getQueryObject(), entity))
+            .sort(mapper.getMappedSort(query.getSortObject(), entity));
+        if (!query.getFieldsObject().isEmpty()) find.projection(mapper.getMappedFields(query.getFieldsObject(), entity));
+        if (query.getSkip()  > 0)               find.skip((int) query.getSkip());
+        if (query.getLimit() > 0)               find.limit(query.getLimit());
+        List<Document> docs = find.into(new ArrayList<>());
+
+        /** One lookup per referenced collection for the whole result */
+        Map<String, Map<String, Object>> loaded = new HashMap<>();
+        for (Map.Entry<String, Class<?>> reference : references.entrySet()) {
+            String      fieldName = entity.getRequiredPersistentProperty(reference.getKey()).getFieldName();
+            Set<String> ids       = new HashSet<>();
+            for (Document doc : docs) ids.addAll(referencedIds(doc.get(fieldName)));
+            loaded.put(reference.getKey(), loadById(reference.getValue(), ids));
+        }
+
+        List<T> entities = new ArrayList<>(docs.size());
+        for (Document doc : docs) {
+            Map<String, Object> refs = new HashMap<>();
+            for (String property : references.keySet()) 
+                refs.put(property, doc.remove(entity.getRequiredPersistentProperty(property).getFieldName()));
+
+            T                             bean     = converter.read(clazz, doc);
+            PersistentPropertyAccessor<T> accessor = entity.getPropertyAccessor(bean);
+            for (String property : references.keySet()) {
+                MongoPersistentProperty persistent = entity.getRequiredPersistentProperty(property);
+                Map<String, Object>     targets    = loaded.get(property);
+                List<Object>            values     = new ArrayList<>();
+                for (String id : referencedIds(refs.get(property))) {
+                    Object target = targets.get(id);
+                    if (target != null) values.add(target);
+                }
+                if (persistent.isCollectionLike()) {
+                    Collection<Object> collection = Set.class.isAssignableFrom(persistent.getType()) 
+                        ? new LinkedHashSet<>(values) : values;
+                    accessor.setProperty(persistent, refs.get(property) == null ? null : collection);
+                } else {
+                    accessor.setProperty(persistent, values.isEmpty() ? null : values.get(0));
+                }
+            }
+            entities.add(accessor.getBean());
+        }
+        return entities;
+    }
+
+    /**
+     * Ids of a stored reference: a DBRef, an embedded document with an 
+     * {@code _id}, a raw id, or an array of those.
+     */
+    public static List<String> referencedIds(Object value) {
+        List<String> ids = new ArrayList<>();
+        collectReferencedIds(value, ids);
+        return ids;
+    }
+
+    private static void collectReferencedIds(Object value, List<String> into) {
+        if (value == null) return;
+        if (value instanceof Collection) {
+            for (Object item : (Collection<?>) value) collectReferencedIds(item, into);
+        } else if (value instanceof DBRef) {
+            into.add(idString(((DBRef) value).getId()));
+        } else if (value instanceof Document) {
+            Object id = ((Document) value).get("_id");
+            if (id == null) id = ((Document) value).get("$id");
+            if (id != null) into.add(idString(id));
+        } else {
+            into.add(idString(value));
+        }
+    }
+
+    private static String idString(Object id) {
+        return id instanceof ObjectId ? ((ObjectId) id).toHexString() : String.valueOf(id);
+    }
+
+    /** Entities of {@code clazz} by id string, from the catalog if cached, else in one {@code $in} query. */
+    private Map<String, Object> loadById(Class<?> clazz, Collection<String> ids) {
+        Map<String, Object> byId = new HashMap<>();
+        if (ids.isEmpty()) return byId;
+        if (referenceCatalog.isCached(clazz)) {
+            @SuppressWarnings("unchecked")
+            Map<String, ?> catalog = referenceCatalog.byId((Class<? extends NameBasedModel>) clazz);
+            for (String id : ids) {
+                Object entity = catalog.get(id);
+                if (entity != null) byId.put(id, entity);
+            }
+            return byId;
+        }
+
+        MongoPersistentEntity<?> target = getMongoTemplate().getConverter().getMappingContext().getRequiredPersistentEntity(clazz);
+        for (Object entity : getMongoTemplate().find(new Query(Criteria.where("id").in(ids)), clazz)) {
+            Object id = target.getIdentifierAccessor(entity).getIdentifier();
+            if (id != null) byId.put(idString(id), entity);
+        }
+        return byId;
+    }
+
+
+    /**
+     * Finds every document whose property matches one of the values, in a 
+     * single {@code $in} query.
+     *
+     * @param clazz        model class of the collection
+     * @param propertyName property name on the model class (e.g. {@code name})
+     * @param values       values to match
+     */
+    public <T> List<T> findAllByFieldIn(Class<T> clazz, String propertyName, Collection<?> values) {
+        if (values.isEmpty()) return new ArrayList<>();
+        return getMongoTemplate().find(new Query(Criteria.where(propertyName).in(values)), clazz);
+    }
+
+
+    /**
+     * Reads a single field of a collection without loading the documents. 
+     * Runs as a field projection, or as a {@code $group} aggregation when 
+     * {@code distinct} is true; either way the server skips and limits, so
+     * only one page of values is ever sent and held in memory. Distinct 
+     * values count array elements one by one, like {@code distinct} does;
+     * a missing field, {@code null} and an empty array all count as one
+     * {@code null} value. References read as the ids they point to.
+     *
+     * @param clazz        model class of the collection
+     * @param propertyName property name on the model class (e.g. {@code id})
+     * @param distinct     whether to return distinct values only
+     * @param pageable     page to return; projected values are ordered by {@code _id}, 
+     *                     distinct values by value
+     * @return the page of values, with {@link Slice#hasNext()} set
+     * @throws IllegalArgumentException if the property is not persisted on the model
+     */
+    public <T> Slice<Object> findFieldValues(
+        Class<T> clazz,
+        String   propertyName,
+        boolean  distinct,
+        Pageable pageable
+    ) {
+        String                    fieldName  = resolveFieldName(clazz, propertyName);
+        MongoCollection<Document> collection = getMongoTemplate().getCollection(getMongoTemplate().getCollectionName(clazz));
+        int                       skip       = (int) pageable.getOffset();
+        int                       limit      = pageable.getPageSize();
+        List<Object>              values     = new ArrayList<>(limit + 1);
+
+        if (distinct) {
+            List<Document> pipeline = List.of(
+                new Document("$unwind", new Document("path", "$" + fieldName).append("preserveNullAndEmptyArrays", true)),
+                new Document("$group",  new Document("_id", "$" + fieldName)),
+                new Document("$sort",   new Document("_id", 1)),
+                new Document("$skip",   skip),
+                new Document("$limit",  limit + 1) // one extra row tells us whether there is a next page
+            );
+            try (MongoCursor<Document> cursor = collection.aggregate(pipeline)
+                    .allowDiskUse(true)
+                    .batchSize(limit + 1)
+                    .iterator()
+            ) {
+                while (cursor.hasNext()) {
+                    values.add(toFieldValue(cursor.next().get("_id")));
+                }
+            }
+        } else {
+            Document projection = new Document(fieldName, 1);
+            if (!"_id".equals(fieldName)) projection.append("_id", 0);
+
+            try (MongoCursor<Document> cursor = collection.find()
+                    .projection(projection)
+                    .sort(new Document("_id", 1))
+                    .skip(skip)
+                    .limit(limit + 1) // one extra row tells us whether there is a next page
+                    .batchSize(limit + 1)
+                    .iterator()
+            ) {
+                while (cursor.hasNext()) {
+                    values.add(toFieldValue(cursor.next().get(fieldName)));
+                }
+            }
+        }
+
+        boolean hasNext = values.size() > limit;
+        if (hasNext) values.remove(limit);
+        logger.debug("Queried " + values.size() + " value(s) of " + fieldName + " on " + clazz.getSimpleName());
+        return new SliceImpl<>(values, pageable, hasNext);
+    }
+
+
+    /**
+     * Maps a property of the model class to its field name in MongoDB 
+     * (e.g. {@code id} to {@code _id}).
+     *
+     * @throws IllegalArgumentException if the property is not persisted on the model
+     */
+    public String resolveFieldName(Class<?> clazz, String propertyName) {
+        MongoPersistentEntity<?> entity = getMongoTemplate().getConverter().getMappingContext().getPersistentEntity(clazz);
+        MongoPersistentProperty  property = entity == null ? null : entity.getPersistentProperty(propertyName);
+        if (property == null)
+            throw new IllegalArgumentException(propertyName + " is not a field of " + clazz.getSimpleName());
+        return property.getFieldName();
+    }
+
+
+    /**
+     * Field of the soft-delete flag of a model, read from its mapping: the
+     * boolean persistent property named like a soft-delete flag (see 
+     * {@link #SOFT_DELETED_PROPERTIES}), under its stored field name. 
+     * Resolved once per class.
+     *
+     * @return empty if the model has no such property; it cannot be soft 
+     *         deleted through a field update then, and nothing is filtered
+     */
+    public static Optional<String> softDeletedField(MongoTemplate mongoTemplate, Class<?> clazz) {
+        return softDeletedProperty(mongoTemplate, clazz).map(MongoPersistentProperty::getFieldName);
+    }
+
+    public Optional<String> softDeletedField(Class<?> clazz) {
+        return softDeletedField(getMongoTemplate(), clazz);
+    }
+
+    /** Whether an entity carries the soft-delete flag; {@code false} for models without one. */
+    public boolean isSoftDeleted(Object entity) {
+        if (entity == null) return false;
+        Optional<MongoPersistentProperty> property = softDeletedProperty(getMongoTemplate(), entity.getClass());
+        if (property.isEmpty()) return false;
+        MongoPersistentEntity<?> persistent = getMongoTemplate().getConverter().getMappingContext()
+            .getRequiredPersistentEntity(entity.getClass());
+        return Boolean.TRUE.equals(persistent.getPropertyAccessor(entity).getProperty(property.get()));
+    }
+
+    /** Raw filter leaving out the soft-deleted documents of a model; empty if it has no flag. */
+    public static Document notSoftDeleted(MongoTemplate mongoTemplate, Class<?> clazz) {
+        return softDeletedField(mongoTemplate, clazz)
+            .map(field -> new Document(field, new Document("$ne", true)))
+            .orElseGet(Document::new);
+    }
+
+
+    private static Optional<MongoPersistentProperty> softDeletedProperty(MongoTemplate mongoTemplate, Class<?> clazz) {
+        return softDeletedProperties.computeIfAbsent(clazz, key -> {
+            MongoPersistentEntity<?> entity = mongoTemplate.getConverter().getMappingContext().getPersistentEntity(key);
+            if (entity == null) return Optional.empty();
+            for (MongoPersistentProperty property : entity) {
+                boolean isBoolean = property.getType() == boolean.class || property.getType() == Boolean.class;
+                if (isBoolean && SOFT_DELETED_PROPERTIES.contains(property.getName().toLowerCase()))
+                    return Optional.of(property);
+            }
+            logger.warn(key.getSimpleName() + " has no soft-delete flag property");
+            return Optional.empty();
+        });
+    }
+
+    /** ObjectIds are returned the same way {@link MongoBaseModel#getId()} exposes them. */
+    /** Ids as strings, and DBRefs, also inside arrays, as the ids they point to. */
+    private Object toFieldValue(Object value) {
+        if (value instanceof DBRef)      return idString(((DBRef) value).getId());
+        if (value instanceof ObjectId)   return ((ObjectId) value).toHexString();
+        if (value instanceof Collection) {
+            List<Object> values = new ArrayList<>(((Collection<?>) value).size());
+            for (Object item : (Collection<?>) value) values.add(toFieldValue(item));
+            return values;
+        }
+        return value;
+    }
+
+
+
+
+    // =======================================================================
+    // Batched writes
+    // =======================================================================
+    /**
+     * Applies one update to every document whose key property is in 
+     * {@code keys}: a key lookup and a single {@code updateMulti} with 
+     * {@code $in}, however many keys there are. Bumps the 
+     * {@link #REVISION_FIELD} of every matched document.
+     *
+     * @param clazz           model class of the collection
+     * @param keyProperty     property the keys refer to ({@code id} or {@code name})
+     * @param keyOf           reads that property from a document
+     * @param keys            keys sent by the client
+     * @param update          update applied to all matching documents
+     * @param returnDocuments whether to read the updated documents back
+     */
+    public <T extends MongoBaseModel> BulkWriteResult<T> updateAllByKeys(
+        Class<T>            clazz,
+        String              keyProperty,
+        Function<T, String> keyOf,
+        Collection<String>  keys,
+        Update              update,
+        boolean             returnDocuments
+    ) {
+        Query query = new Query(Criteria.where(keyProperty).in(keys));
+        update.inc(REVISION_FIELD, 1L);
+        if (returnDocuments) {
+            UpdateResult result    = getMongoTemplate().updateMulti(query, update, clazz);
+            List<T>      documents = getMongoTemplate().find(query, clazz);
+            return toBulkResult(keys, documents, keyOf, result.getModifiedCount());
+        }
+        List<String> existing = findKeys(query, keyProperty, clazz);
+        UpdateResult result   = getMongoTemplate().updateMulti(query, update, clazz);
+        return toBulkResult(keys, existing, result.getModifiedCount());
+    }
+
+
+    /**
+     * Sets the soft-delete flag of the documents of {@code ids} on the field
+     * resolved by {@link #softDeletedField(Class)}. Only documents whose flag
+     * actually flips are written and returned, so two requests racing on the
+     * same ids never both report a document, and derived data (e.g. rollups)
+     * can be adjusted with exactly the returned documents.
+     * <p>
+     * One projected read finds which ids exist and which of them are in the
+     * opposite state; only those are then flipped, each by a 
+     * {@code findAndModify} filtered on the opposite state, so a document 
+     * flipped meanwhile by someone else is neither written nor returned.
+     * Ids already in the requested state cost nothing more, and keep their
+     * {@link #REVISION_FIELD}.
+     *
+     * @return outcome per id ({@code APPLIED} if the document exists, flipped
+     *         or not), {@code modified} and {@code documents} counting only 
+     *         the flipped ones
+     * @throws IllegalStateException if the model has no soft-delete flag
+     */
+    public <T extends MongoBaseModel> BulkWriteResult<T> softDeleteAllByIds(
+        Class<T> clazz, Collection<String> ids, boolean deleted
+    ) {
+        String field = softDeletedField(clazz)
+            .orElseThrow(() -> new IllegalStateException(clazz.getSimpleName() + " has no soft-delete flag."));
+
+        MongoConverter           converter  = getMongoTemplate().getConverter();
+        MongoPersistentEntity<?> entity     = converter.getMappingContext().getRequiredPersistentEntity(clazz);
+        Document                 byIds      = new QueryMapper(converter).getMappedObject(
+            new Query(Criteria.where("id").in(ids)).getQueryObject(), entity
+        );
+        Set<String>              existing   = new HashSet<>();
+        List<String>             candidates = new ArrayList<>();
+        for (Document doc : getMongoTemplate().getCollection(getMongoTemplate().getCollectionName(clazz))
+                .find(byIds)
+                .projection(Projections.include(field))) {
+            String id = idString(doc.get("_id"));
+            existing.add(id);
+            if (Boolean.TRUE.equals(doc.get(field)) != deleted) candidates.add(id);
+        }
+
+        Criteria from    = deleted ? Criteria.where(field).ne(true) : Criteria.where(field).is(true);
+        List<T>  flipped = new ArrayList<>(candidates.size());
+        for (String id : candidates) {
+            T document = getMongoTemplate().findAndModify(
+                new Query(Criteria.where("id").is(id)).addCriteria(from),
+                new Update().set(field, deleted).inc(REVISION_FIELD, 1L),
+                FindAndModifyOptions.options().returnNew(true),
+                clazz
+            );
+            if (document != null) flipped.add(document);
+        }
+
+        Map<String, Outcome> outcomes = new LinkedHashMap<>();
+        for (String id : ids) outcomes.put(id, existing.contains(id) ? Outcome.APPLIED : Outcome.NOT_FOUND);
+        return new BulkWriteResult<>(outcomes, existing.size(), flipped.size(), flipped);
+    }
+
+
+    /**
+     * Deletes every document whose key property is in {@code keys} with a 
+     * single {@code deleteMany} and {@code $in}.
+     *
+     * @see #updateAllByKeys
+     */
+    public <T extends MongoBaseModel> BulkWriteResult<T> deleteAllByKeys(
+        Class<T>            clazz,
+        String              keyProperty,
+        Function<T, String> keyOf,
+        Collection<String>  keys,
+        boolean             returnDocuments
+    ) {
+        Query query = new Query(Criteria.where(keyProperty).in(keys));
+        if (returnDocuments) {
+            List<T>      documents = getMongoTemplate().find(query, clazz);
+            DeleteResult result    = getMongoTemplate().remove(query, clazz);
+            return toBulkResult(keys, documents, keyOf, result.getDeletedCount());
+        }
+        List<String> existing = findKeys(query, keyProperty, clazz);
+        DeleteResult result   = getMongoTemplate().remove(query, clazz);
+        return toBulkResult(keys, existing, result.getDeletedCount());
+    }
+
+
+    /**
+     * A patched document with its new revision, and the document as it was
+     * right before this patch when it was asked for.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Revised<T> {
+        private final T    entity;
+        private final long revision;
+        /** {@code null} unless the patch was run with {@code withPrevious} */
+        private final T    previous;
+    }
+
+    /** Attempts of a patch with {@code withPrevious} racing other writers. */
+    private static final int PATCH_ATTEMPTS = 3;
+
+
+    /**
+     * Applies a partial update ({@code $set}/{@code $unset}) to one document
+     * with a single {@code findAndModify}, instead of loading and saving the
+     * whole document. Every patch bumps {@link #REVISION_FIELD}.
+     *
+     * @param update           partial update in model property names
+     * @param expectedRevision only apply it if the document is still at this 
+     *                         revision; {@code null} to skip the check
+     * @return the patched document, or {@code null} if there is no such id
+     * @throws OptimisticLockingFailureException if the document has moved on from {@code expectedRevision}
+     */
+    public <T> Revised<T> patchById(Class<T> clazz, String id, Update update, Long expectedRevision) {
+        return patchById(clazz, id, update, expectedRevision, false);
+    }
+
+    /**
+     * {@link #patchById(Class, String, Update, Long)}, also returning the 
+     * document as it was right before the patch ({@code withPrevious}), e.g.
+     * to move derived totals from the old state to the new one.
+     * <p>
+     * The pre-image is read first and the patch is applied only if the 
+     * document is still at that revision, so both images belong to this 
+     * patch. Without {@code expectedRevision}, a concurrent write makes it
+     * read again, up to {@link #PATCH_ATTEMPTS} times.
+     */
+    public <T> Revised<T> patchById(Class<T> clazz, String id, Update update, Long expectedRevision, boolean withPrevious) {
+        MongoConverter            converter  = getMongoTemplate().getConverter();
+        MongoPersistentEntity<?>  entity     = converter.getMappingContext().getPersistentEntity(clazz);
+        MongoCollection<Document> collection = getMongoTemplate().getCollection(getMongoTemplate().getCollectionName(clazz));
+        Document                  byId       = new QueryMapper(converter).getMappedObject(
+            new Query(Criteria.where("id").is(id)).getQueryObject(), entity
+        );
+        update.inc(REVISION_FIELD, 1L);
+        /** Map property names, DBRefs and ids the same way MongoTemplate would, but keep the raw result for the revision */
+        Document mappedUpdate = new UpdateMapper(converter).getMappedObject(update.getUpdateObject(), entity);
+
+        for (int attempt = 0; attempt < PATCH_ATTEMPTS; attempt++) {
+            Document before   = null;
+            Long     revision = expectedRevision;
+            if (withPrevious) {
+                before = collection.find(byId).first();
+                if (before == null) return null;
+                long current = revisionOf(before);
+                if (expectedRevision != null && current != expectedRevision)
+                    throw new OptimisticLockingFailureException(
+                        clazz.getSimpleName() + " " + id + " is no longer at revision " + expectedRevision
+                    );
+                revision = current;
+            }
+
+            Document filter = new Document(byId);
+            if (revision != null) {
+                filter.append(REVISION_FIELD, revision == 0
+                    ? new Document("$in", Arrays.asList(0L, null)) // null also matches a missing field
+                    : revision);
+            }
+            Document updated = collection.findOneAndUpdate(
+                filter, mappedUpdate, new FindOneAndUpdateOptions().returnDocument(ReturnDocument.AFTER)
+            );
+            if (updated != null) {
+                return new Revised<>(
+                    converter.read(clazz, updated), revisionOf(updated), before == null ? null : converter.read(clazz, before)
+                );
+            }
+
+            boolean exists = getMongoTemplate().exists(new Query(Criteria.where("id").is(id)), clazz);
+            if (!exists) return null;
+            if (expectedRevision != null)
+                throw new OptimisticLockingFailureException(
+                    clazz.getSimpleName() + " " + id + " is no longer at revision " + expectedRevision
+                );
+            /** Only reached withPrevious: someone else wrote in between, read the new state again */
+        }
+        throw new OptimisticLockingFailureException(
+            clazz.getSimpleName() + " " + id + " kept changing during the patch; try again"
+        );
+    }
+
+    private static long revisionOf(Document document) {
+        Object revision = document.get(REVISION_FIELD);
+        return revision instanceof Number ? ((Number) revision).longValue() : 0L;
+    }
+
+    /**
+     * Current {@link #REVISION_FIELD} of the documents of {@code ids}, read
+     * with one projected query. The field is not mapped on the models, so 
+     * this is how a read hands the revision out (e.g. as an {@code ETag}).
+     *
+     * @return revision per existing id; missing ids are left out
+     */
+    public <T> Map<String, Long> findRevisions(Class<T> clazz, Collection<String> ids) {
+        MongoConverter           converter = getMongoTemplate().getConverter();
+        MongoPersistentEntity<?> entity    = converter.getMappingContext().getRequiredPersistentEntity(clazz);
+        Document                 byIds     = new QueryMapper(converter).getMappedObject(
+            new Query(Criteria.where("id").in(ids)).getQueryObject(), entity
+        );
+        Map<String, Long> revisions = new HashMap<>();
+        for (Document doc : getMongoTemplate().getCollection(getMongoTemplate().getCollectionName(clazz))
+                .find(byIds)
+                .projection(Projections.include(REVISION_FIELD))) {
+            revisions.put(idString(doc.get("_id")), revisionOf(doc));
+        }
+        return revisions;
+    }
+
+
+    /**
+     * Deletes the whole collection with one {@code deleteMany}; nothing is 
+     * read into memory.
+     *
+     * @return number of deleted documents
+     */
+    public <T> long deleteAll(Class<T> clazz) {
+        return getMongoTemplate().remove(new Query(), clazz).getDeletedCount();
+    }
+
+
+    /**
+     * Deletes the whole collection on a background job, {@code batchSize} 
+     * documents at a time with a pause between batches, so a very large 
+     * collection does not hold Mongo busy in one long operation.
+     *
+     * @param pauseMillis throttle between two batches
+     * @param onDone      runs once the collection is empty, e.g. to drop caches
+     * @return the job, whose processed count is the number of deleted documents
+     */
+    public <T> Job deleteAllInBackground(Class<T> clazz, int batchSize, long pauseMillis, Runnable onDone) {
+        if (batchSize <= 0) throw new IllegalArgumentException("batchSize must be positive.");
+        MongoCollection<Document> collection = getMongoTemplate().getCollection(getMongoTemplate().getCollectionName(clazz));
+
+        return backgroundJobs.submit("deleteAll " + clazz.getSimpleName(), job -> {
+            while (!job.isCancelled()) {
+                List<Object> ids = new ArrayList<>(batchSize);
+                collection.find()
+                    .projection(Projections.include("_id"))
+                    .limit(batchSize)
+                    .forEach(document -> ids.add(document.get("_id")));
+                if (ids.isEmpty()) break;
+
+                job.addProcessed(collection.deleteMany(Filters.in("_id", ids)).getDeletedCount());
+                if (pauseMillis > 0) Thread.sleep(pauseMillis);
+            }
+            if (onDone != null && !job.isCancelled()) onDone.run();
+        });
+    }
+
+
+    /**
+     * Inserts the entities in one unordered bulk write ({@code insertMany}):
+     * a failing document does not stop the others.
+     *
+     * @return error message by position in {@code entities}; empty if every
+     *         document was written
+     */
+    public <T> Map<Integer, String> insertAll(Class<T> clazz, List<T> entities) {
+        Map<Integer, String> errors = new HashMap<>();
+        if (entities.isEmpty()) return errors;
+        try {
+            getMongoTemplate().bulkOps(BulkOperations.BulkMode.UNORDERED, clazz).insert(entities).execute();
+        } catch (BulkOperationException e) {
+            e.getErrors().forEach(error -> errors.put(error.getIndex(), error.getMessage()));
+        }
+        return errors;
+    }
+
+
+    /**
+     * Writes a batch of entities with one unordered bulk, keyed on a unique 
+     * property such as {@code name}, backed by a unique index ensured on 
+     * first use.
+     * <ul>
+     * <li>{@code insertOnly}: existing keys are reported as 
+     * {@code DUPLICATE}, the rest go in with {@code insertMany}. A key 
+     * inserted concurrently in between is rejected by the unique index and
+     * reported as {@code DUPLICATE} as well.</li>
+     * <li>otherwise every entity is upserted on its key: new keys are 
+     * {@code INSERTED}, existing documents {@code UPDATED} in place (their 
+     * {@code _id} is kept). Only the properties in {@code sentProperties} 
+     * are {@code $set}; every other property is {@code $setOnInsert}, so 
+     * the defaults of an entity never overwrite what an existing document 
+     * already holds.</li>
+     * </ul>
+     * One failing item does not stop the others.
+     *
+     * @param entities       entities with distinct keys
+     * @param sentProperties properties the client provided for each entity,
+     *                       parallel to {@code entities}; {@code null} to 
+     *                       write every property (ignored when {@code insertOnly})
+     * @return one result per entity, indexed by its position in {@code entities}
+     */
+    public <T> List<ItemResult> upsertAllByKey(
+        Class<T>                           clazz,
+        String                             keyProperty,
+        Function<T, String>                keyOf,
+        List<T>                            entities,
+        List<? extends Collection<String>> sentProperties,
+        boolean                            insertOnly
+    ) {
+        ItemResult[] results = new ItemResult[entities.size()];
+        if (entities.isEmpty()) return new ArrayList<>();
+
+        MongoConverter           converter = getMongoTemplate().getConverter();
+        MongoPersistentEntity<?> entity    = converter.getMappingContext().getRequiredPersistentEntity(clazz);
+        String                   keyField  = fieldNameOf(entity, keyProperty);
+        ensureUniqueKeyIndex(clazz, keyField);
+
+        /** Position in the bulk -> position in entities */
+        List<Integer>  positions = new ArrayList<>(entities.size());
+        BulkOperations bulk      = getMongoTemplate().bulkOps(BulkOperations.BulkMode.UNORDERED, clazz);
+
+        if (insertOnly) {
+            List<String> keys = new ArrayList<>(entities.size());
+            entities.forEach(item -> keys.add(keyOf.apply(item)));
+            Set<String> existing = new HashSet<>(findKeys(new Query(Criteria.where(keyProperty).in(keys)), keyProperty, clazz));
+
+            for (int i = 0; i < entities.size(); i++) {
+                String key = keys.get(i);
+                if (existing.contains(key)) {
+                    results[i] = new ItemResult(i, key, ItemResult.Outcome.DUPLICATE, "Already exists.");
+                    continue;
+                }
+                bulk.insert(entities.get(i));
+                positions.add(i);
+            }
+        } else {
+            for (int i = 0; i < entities.size(); i++) {
+                Document document = new Document();
+                converter.write(entities.get(i), document);
+
+                Set<String> sentFields = null;
+                if (sentProperties != null) {
+                    sentFields = new HashSet<>();
+                    sentFields.add(keyField);
+                    for (String property : sentProperties.get(i)) sentFields.add(fieldNameOf(entity, property));
+                }
+                Update update = new Update();
+                for (Map.Entry<String, Object> field : document.entrySet()) {
+                    if (field.getKey().equals("_id")) continue;
+                    if (sentFields == null || sentFields.contains(field.getKey())) update.set(field.getKey(), field.getValue());
+                    else                                                            update.setOnInsert(field.getKey(), field.getValue());
+                }
+                bulk.upsert(
+                    new Query(Criteria.where(keyProperty).is(keyOf.apply(entities.get(i)))),
+                    update.inc(REVISION_FIELD, 1L)
+                );
+                positions.add(i);
+            }
+        }
+
+        if (!positions.isEmpty()) {
+            com.mongodb.bulk.BulkWriteResult result;
+            Map<Integer, BulkWriteError>     errors = new HashMap<>();
+            try {
+                result = bulk.execute();
+            } catch (BulkOperationException e) {
+                result = e.getResult();
+                e.getErrors().forEach(error -> errors.put(error.getIndex(), error));
+            }
+            Set<Integer> upserted = new HashSet<>();
+            for (BulkWriteUpsert upsert : result.getUpserts()) upserted.add(upsert.getIndex());
+
+            for (int op = 0; op < positions.size(); op++) {
+                int            i     = positions.get(op);
+                String         key   = keyOf.apply(entities.get(i));
+                BulkWriteError error = errors.get(op);
+                if (error != null) {
+                    boolean duplicate = error.getCode() == 11000; // E11000 duplicate key
+                    results[i] = new ItemResult(
+                        i, key,
+                        duplicate ? ItemResult.Outcome.DUPLICATE : ItemResult.Outcome.FAILED,
+                        error.getMessage()
+                    );
+                } else if (insertOnly || upserted.contains(op)) {
+                    results[i] = new ItemResult(i, key, ItemResult.Outcome.INSERTED, null);
+                } else {
+                    results[i] = new ItemResult(i, key, ItemResult.Outcome.UPDATED, null);
+                }
+            }
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /** {@link #upsertAllByKey(Class, String, Function, List, List, boolean)} writing every property. */
+    public <T> List<ItemResult> upsertAllByKey(
+        Class<T>            clazz,
+        String              keyProperty,
+        Function<T, String> keyOf,
+        List<T>             entities,
+        boolean             insertOnly
+    ) {
+        return upsertAllByKey(clazz, keyProperty, keyOf, entities, null, insertOnly);
+    }
+
+    /** Field name of a model property in its documents, e.g. {@code id} -> {@code _id}. */
+    private static String fieldNameOf(MongoPersistentEntity<?> entity, String property) {
+        MongoPersistentProperty persistent = entity.getPersistentProperty(property);
+        return persistent == null ? property : persistent.getFieldName();
+    }
+
+    /**
+     * Makes sure the key of {@link #upsertAllByKey} has a unique index, once
+     * per collection and field. If it cannot be built (e.g. the collection 
+     * already holds duplicates) the writes go on, unprotected, with a warning.
+     */
+    private void ensureUniqueKeyIndex(Class<?> clazz, String field) {
+        if (!ensuredKeyIndexes.add(getMongoTemplate().getCollectionName(clazz) + "." + field)) return;
+        try {
+            getMongoTemplate().indexOps(clazz).ensureIndex(new Index().on(field, Sort.Direction.ASC).unique());
+        } catch (RuntimeException e) {
+            logger.warn("Could not create a unique index on " + clazz.getSimpleName() + "." + field + ": " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Converts a client-sent value to the named type (a full class name, or a 
+     * {@code java.lang} simple name like {@code Integer}).
+     *
+     * @throws IllegalArgumentException if the type is unknown or the value cannot be converted
+     */
+    public Object convertFieldValue(String value, String typeName) {
+        if (value == null) return null;
+        Class<?> type;
+        try {
+            type = ClassUtils.forName(typeName.contains(".") ? typeName : "java.lang." + typeName, null);
+        } catch (ClassNotFoundException | LinkageError e) {
+            throw new IllegalArgumentException("Unknown field type: " + typeName);
+        }
+        try {
+            return getMongoTemplate().getConverter().getConversionService().convert(value, type);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Cannot convert " + value + " to " + typeName);
+        }
+    }
+
+
+    /** Keys which exist, read as one projection with {@code distinct}. */
+    private <T> List<String> findKeys(Query query, String keyProperty, Class<T> clazz) {
+        List<String> keys = new ArrayList<>();
+        for (Object value : getMongoTemplate().findDistinct(query, keyProperty, clazz, Object.class)) {
+            keys.add(String.valueOf(toFieldValue(value)));
+        }
+        return keys;
+    }
+
+    /** Outcomes in the order of {@code keys}, with the documents lined up the same way. */
+    private <T> BulkWriteResult<T> toBulkResult(
+        Collection<String> keys, List<T> documents, Function<T, String> keyOf, long modified
+    ) {
+        Map<String, T> byKey = new HashMap<>();
+        documents.forEach(document -> byKey.put(keyOf.apply(document), document));
+
+        Map<String, Outcome> outcomes = new LinkedHashMap<>();
+        List<T>              ordered  = new ArrayList<>(byKey.size());
+        for (String key : keys) {
+            T       document = byKey.get(key);
+            Outcome previous = outcomes.put(key, document == null ? Outcome.NOT_FOUND : Outcome.APPLIED);
+            if (document != null && previous == null) ordered.add(document); // a key sent twice is returned once
+        }
+        return new BulkWriteResult<>(outcomes, byKey.size(), modified, ordered);
+    }
+
+    private <T> BulkWriteResult<T> toBulkResult(Collection<String> keys, List<String> existing, long modified) {
+        Set<String>          found    = new HashSet<>(existing);
+        Map<String, Outcome> outcomes = new LinkedHashMap<>();
+        for (String key : keys) {
+            outcomes.put(key, found.contains(key) ? Outcome.APPLIED : Outcome.NOT_FOUND);
+        }
+        return new BulkWriteResult<>(outcomes, found.size(), modified, null);
+    }
+
+
+
+
     /** Remove a field completely from MongoDB */
     public void removeField(MongoBaseModel entity, String fieldName, Class<?> clazz) {
         /** Direct-modification on Database */
         Query query   = new Query(Criteria.where("id").is(entity.getId()));
-        Update update = new Update().unset(fieldName);
+        Update update = new Update().unset(fieldName).inc(REVISION_FIELD, 1L);
         UpdateResult result = getMongoTemplate().updateMulti(query, update, entity.getClass());
         /** Dealing with update on in-memory object */
         Field field = ReflectionUtils.findField(entity.getClass(), fieldName);
@@ -105,7 +1078,7 @@ public abstract class BaseDocumentService {
     // }
     public void renameField(String collectionName, String oldFieldName, String newFieldName, Criteria criteria) {
         // Create an instance of the update operation
-        Update update = new Update().rename(oldFieldName, newFieldName);
+        Update update = new Update().rename(oldFieldName, newFieldName).inc(REVISION_FIELD, 1L);
     
         // Apply this update to documents matching the specified criteria in the collection
         UpdateResult result = getMongoTemplate().updateMulti(new Query(criteria), update, collectionName);
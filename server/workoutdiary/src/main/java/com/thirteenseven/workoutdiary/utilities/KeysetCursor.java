@@ -0,0 +1,49 @@
+package com.thirteenseven.workoutdiary.utilities;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+
+/**
+ * Opaque position of a keyset (seek) page: the {@code (date, _id)} of the 
+ * last document a client has received. Clients only ever echo the encoded 
+ * string back, so the format can change without breaking them.
+ */
+@Getter
+@AllArgsConstructor
+public class KeysetCursor {
+
+    private static final String SEPARATOR = ":";
+
+    /** {@code null} if the last document has no date */
+    private final Date   date;
+    private final String id;
+
+
+    /** URL-safe string handed out as {@code nextCursor}. */
+    public String encode() {
+        String raw = (date == null ? "" : date.getTime()) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a cursor previously produced by {@link #encode()}.
+     * 
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static KeysetCursor decode(String cursor) {
+        try {
+            String   raw   = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR, 2);
+            if (parts.length != 2 || parts[1].isEmpty()) throw new IllegalArgumentException();
+            return new KeysetCursor(parts[0].isEmpty() ? null : new Date(Long.parseLong(parts[0])), parts[1]);
+        } catch (IllegalArgumentException e) { // NumberFormatException is one as well
+            throw new IllegalArgumentException("Malformed cursor: " + cursor);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.thirteenseven.workoutdiary.utilities;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.Arrays;
+
+
+/**
+ * Helpers for the admin layout comparisons, which time the same read a 
+ * number of times.
+ */
+public final class Timing {
+
+    private Timing() {}
+
+
+    /**
+     * Median of {@code nanos} in microseconds. The first run warms up and is
+     * left out, unless it is the only one.
+     */
+    public static long medianMicros(long[] nanos) {
+        if (nanos.length == 0) return 0;
+        long[] timed = nanos.length > 1 ? Arrays.copyOfRange(nanos, 1, nanos.length) : nanos.clone();
+        Arrays.sort(timed);
+        return timed[timed.length / 2] / 1000;
+    }
+}
@@ -0,0 +1,143 @@
+package com.thirteenseven.workoutdiary.service;
+
+// ~~~~~~~~ standard ~~~~~~~~
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// ~~~~~~~~ Mongo ~~~~~~~~
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+// ~~~~~~~~ Spring ~~~~~~~~
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+// ~~~~~~~~ Workout Diary ~~~~~~~~
+import com.thirteenseven.workoutdiary.model.Exercise;
+import com.thirteenseven.workoutdiary.service.base.BaseDocumentService;
+
+
+/**
+ * The bitmap index must answer a reference-only search exactly like the
+ * Mongo query it replaces: same exercises, same order, same pages.
+ */
+@DataMongoTest
+@Import(ExerciseFilterIndexService.class)
+@TestPropertySource(properties = "spring.data.mongodb.database=workoutdiary-test")
+class ExerciseFilterIndexServiceTest {
+
+    @Autowired
+    private MongoTemplate              mongoTemplate;
+    @Autowired
+    private ExerciseFilterIndexService filterIndex;
+
+    private final String chest = new ObjectId().toHexString();
+    private final String back  = new ObjectId().toHexString();
+    private final String legs  = new ObjectId().toHexString();
+    private final String easy  = new ObjectId().toHexString();
+    private final String hard  = new ObjectId().toHexString();
+
+    private MongoCollection<Document> exercises;
+    /** {@code null} if the exercise model has no soft-delete flag */
+    private String                    deletedField;
+    private String                    deletedId;
+
+
+    @BeforeEach
+    void seed() {
+        exercises    = mongoTemplate.getCollection(mongoTemplate.getCollectionName(Exercise.class));
+        deletedField = BaseDocumentService.softDeletedField(mongoTemplate, Exercise.class).orElse(null);
+        exercises.drop();
+
+        /** Inserted out of name order, so natural order differs from the search order */
+        insert("Squat",       List.of(legs),        hard, false);
+        insert("Bench press", List.of(chest),       easy, false);
+        insert("Row",         List.of(back, chest), easy, false);
+        insert("Deadlift",    List.of(back, legs),  hard, false);
+        insert("Dips",        List.of(chest),       hard, false);
+        deletedId = insert("Push up", List.of(chest), easy, true);
+        filterIndex.invalidate();
+    }
+
+
+    @Test
+    void matchesMongoForEveryFilter() {
+        List<Map<String, List<String>>> filters = List.of(
+            Map.of(),
+            Map.of(ExerciseFilterIndexService.MUSCLE_GROUPS, List.of(chest)),
+            Map.of(ExerciseFilterIndexService.MUSCLE_GROUPS, List.of(back, chest)),
+            Map.of(ExerciseFilterIndexService.MUSCLE_GROUPS, List.of(chest), ExerciseFilterIndexService.DIFFICULTY, List.of(hard)),
+            Map.of(ExerciseFilterIndexService.DIFFICULTY,    List.of(easy, hard))
+        );
+        for (Map<String, List<String>> filter : filters) {
+            for (boolean strict : new boolean[] { false, true }) {
+                assertEquals(
+                    mongoIds(filter, strict), filterIndex.match(filter, strict).ids(),
+                    filter + (strict ? " ($all)" : " ($in)")
+                );
+            }
+        }
+    }
+
+    @Test
+    void cutsTheSamePagesAsMongo() {
+        Map<String, List<String>> filter = Map.of();
+        List<String>              all    = mongoIds(filter, false);
+
+        /** Page 1 of size 2, plus the first id of the next page */
+        assertEquals(all.subList(2, Math.min(5, all.size())), filterIndex.match(filter, false).idsOfPage(1, 2));
+    }
+
+    @Test
+    void leavesOutSoftDeletedExercises() {
+        if (deletedField == null) return;
+        assertFalse(filterIndex.match(Map.of(), false).ids().contains(deletedId));
+    }
+
+
+    // =======================================================================
+    // Private
+    // =======================================================================
+    private String insert(String name, List<String> muscleGroups, String difficulty, boolean deleted) {
+        List<ObjectId> groups = new ArrayList<>();
+        muscleGroups.forEach(id -> groups.add(new ObjectId(id)));
+        Document doc = new Document("name", name)
+            .append(ExerciseFilterIndexService.MUSCLE_GROUPS, groups)
+            .append(ExerciseFilterIndexService.DIFFICULTY,    new ObjectId(difficulty));
+        if (deleted) {
+            if (deletedField == null) return null;
+            doc.append(deletedField, true);
+        }
+        exercises.insertOne(doc);
+        return doc.getObjectId("_id").toHexString();
+    }
+
+    /** The ids the Mongo search returns for the same filters, in its order. */
+    private List<String> mongoIds(Map<String, List<String>> filters, boolean strict) {
+        Document query = new Document(BaseDocumentService.notSoftDeleted(mongoTemplate, Exercise.class));
+        filters.forEach((field, ids) -> {
+            List<ObjectId> values = new ArrayList<>();
+            ids.forEach(id -> values.add(new ObjectId(id)));
+            query.append(field, new Document(strict ? "$all" : "$in", values));
+        });
+
+        List<String> ids = new ArrayList<>();
+        exercises.find(query)
+            .projection(Projections.include("_id"))
+            .sort(Sorts.ascending("name", "_id"))
+            .forEach(doc -> ids.add(doc.getObjectId("_id").toHexString()));
+        return ids;
+    }
+}